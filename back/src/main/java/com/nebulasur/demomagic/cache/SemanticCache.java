@@ -0,0 +1,214 @@
+package com.nebulasur.demomagic.cache;
+
+import com.nebulasur.demomagic.search.VectorMath;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of values keyed by embedding similarity rather than exact text. Each partition (for
+ * example a tenant and language) is a ring buffer of unit vectors stored row-major in one
+ * array, so a lookup is an exact scan of dot products; the oldest entry is overwritten once a
+ * partition is full. A lookup only hits at or above the similarity threshold and within the
+ * time-to-live.
+ *
+ * <p>Whether a hit was right cannot be known when it is served; callers that check a sample of
+ * hits afterwards report the outcome through {@link #recordVerification}, which feeds the
+ * false-hit rate in {@link #stats}.
+ */
+public final class SemanticCache<V> {
+
+    private final int maxEntriesPerPartition;
+    private final long ttlNanos;
+    private final double threshold;
+    private final Map<String, Partition<V>> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong falseHits = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SemanticCache(int maxEntriesPerPartition, long ttlMillis, double threshold) {
+        this.maxEntriesPerPartition = Math.max(1, maxEntriesPerPartition);
+        this.ttlNanos = Math.max(1L, ttlMillis) * 1_000_000L;
+        this.threshold = Math.max(-1.0, Math.min(1.0, threshold));
+    }
+
+    /**
+     * The most similar live entry of the partition, if it reaches the threshold.
+     */
+    public Optional<Hit<V>> lookup(String partition, float[] vector) {
+        lookups.incrementAndGet();
+        Partition<V> entries = partitions.get(partition);
+        float[] unit = VectorMath.normalize(vector);
+        if (entries == null || unit == null) {
+            return Optional.empty();
+        }
+        Optional<Hit<V>> hit = entries.nearest(unit, System.nanoTime(), threshold);
+        if (hit.isPresent()) {
+            hits.incrementAndGet();
+        }
+        return hit;
+    }
+
+    public void put(String partition, float[] vector, V value) {
+        float[] unit = VectorMath.normalize(vector);
+        if (unit == null || value == null) {
+            return;
+        }
+        partitions.computeIfAbsent(partition, key -> new Partition<>(maxEntriesPerPartition))
+            .add(ids.incrementAndGet(), unit, value, System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * Removes the entry behind an earlier hit, if it has not been overwritten since.
+     */
+    public boolean invalidate(String partition, long id) {
+        Partition<V> entries = partitions.get(partition);
+        boolean removed = entries != null && entries.remove(id);
+        if (removed) {
+            invalidations.incrementAndGet();
+        }
+        return removed;
+    }
+
+    public void invalidatePartitions(String prefix) {
+        partitions.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void recordVerification(boolean falseHit) {
+        verified.incrementAndGet();
+        if (falseHit) {
+            falseHits.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long lookupCount = lookups.get();
+        long hitCount = hits.get();
+        long verifiedCount = verified.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("partitions", partitions.size());
+        stats.put("size", partitions.values().stream().mapToInt(Partition::size).sum());
+        stats.put("maxEntriesPerPartition", maxEntriesPerPartition);
+        stats.put("threshold", threshold);
+        stats.put("lookups", lookupCount);
+        stats.put("hits", hitCount);
+        stats.put("hitRate", lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount);
+        stats.put("upstreamCallsSaved", hitCount);
+        stats.put("verified", verifiedCount);
+        stats.put("falseHits", falseHits.get());
+        stats.put("falseHitRate", verifiedCount == 0 ? 0.0 : (double) falseHits.get() / verifiedCount);
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    public record Hit<V>(long id, V value, double similarity) {
+    }
+
+    private static final class Partition<V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final long[] ids;
+        private final long[] expiresAtNanos;
+        private final Object[] values;
+        private float[] vectors;
+        private int dimensions;
+        private int next;
+        private int size;
+
+        private Partition(int capacity) {
+            this.capacity = capacity;
+            this.ids = new long[capacity];
+            this.expiresAtNanos = new long[capacity];
+            this.values = new Object[capacity];
+        }
+
+        private void add(long id, float[] unit, Object value, long expiresAt) {
+            lock.lock();
+            try {
+                if (unit.length != dimensions) {
+                    // First entry, or the embedding model changed: older vectors are not comparable.
+                    dimensions = unit.length;
+                    vectors = new float[capacity * dimensions];
+                    Arrays.fill(values, null);
+                    next = 0;
+                    size = 0;
+                }
+                System.arraycopy(unit, 0, vectors, next * dimensions, dimensions);
+                ids[next] = id;
+                expiresAtNanos[next] = expiresAt;
+                values[next] = value;
+                next = (next + 1) % capacity;
+                size = Math.min(capacity, size + 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Optional<Hit<V>> nearest(float[] unit, long now, double threshold) {
+            lock.lock();
+            try {
+                if (unit.length != dimensions) {
+                    return Optional.empty();
+                }
+                int best = -1;
+                float bestScore = Float.NEGATIVE_INFINITY;
+                for (int row = 0; row < size; row++) {
+                    if (values[row] == null || now - expiresAtNanos[row] > 0) {
+                        continue;
+                    }
+                    float score = VectorMath.dot(unit, vectors, row * dimensions, dimensions);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = row;
+                    }
+                }
+                if (best < 0 || bestScore < threshold) {
+                    return Optional.empty();
+                }
+                return Optional.of(new Hit<>(ids[best], (V) values[best], bestScore));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean remove(long id) {
+            lock.lock();
+            try {
+                for (int row = 0; row < size; row++) {
+                    if (ids[row] == id && values[row] != null) {
+                        values[row] = null;
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                int live = 0;
+                for (int row = 0; row < size; row++) {
+                    if (values[row] != null) {
+                        live++;
+                    }
+                }
+                return live;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
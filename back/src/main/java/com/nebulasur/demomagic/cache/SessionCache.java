@@ -0,0 +1,183 @@
+package com.nebulasur.demomagic.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread-safe store for mutable per-user state, bounded by entry count, by approximate memory
+ * and by idle time. Every access refreshes an entry's idle deadline and re-weighs it, so the
+ * weight reflects the value as it was left by the previous request. Entries are kept in access
+ * order, which makes the least recently used entry both the next one to evict and the first
+ * one to go idle; {@link #sweep} therefore stops at the first live entry.
+ */
+public final class SessionCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long idleNanos;
+    private final ToLongFunction<V> weigher;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private long totalWeight;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong weightEvictions = new AtomicLong();
+
+    public SessionCache(int maxEntries, long maxWeight, long idleTtlMillis, ToLongFunction<V> weigher) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxWeight = Math.max(1L, maxWeight);
+        this.idleNanos = Math.max(1L, idleTtlMillis) * 1_000_000L;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<>(Math.min(this.maxEntries, 1024), 0.75f, true);
+    }
+
+    /**
+     * The live value for the key, or a new one from the factory when there is none or it has
+     * been idle for longer than the TTL.
+     */
+    public V getOrCreate(K key, Function<K, V> factory) {
+        return compute(key, current -> current != null ? current : factory.apply(key));
+    }
+
+    /**
+     * Replaces the value for the key with what the function returns when given the live value,
+     * or null when there is none or it has been idle for longer than the TTL. A null result
+     * removes the key. The function runs under the store's lock, so it must be quick; that is
+     * also what makes a read-check-write through it atomic.
+     */
+    public V compute(K key, UnaryOperator<V> function) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && now - entry.lastAccessNanos > idleNanos) {
+                remove(key, entry);
+                idleEvictions.incrementAndGet();
+                entry = null;
+            }
+            V value = function.apply(entry == null ? null : entry.value);
+            if (value == null) {
+                if (entry != null) {
+                    remove(key, entry);
+                }
+                return null;
+            }
+            if (entry == null) {
+                entry = new Entry<>(value);
+                entries.put(key, entry);
+                created.incrementAndGet();
+            }
+            entry.value = value;
+            entry.lastAccessNanos = now;
+            long weight = Math.max(0L, weigher.applyAsLong(value));
+            totalWeight += weight - entry.weight;
+            entry.weight = weight;
+            evictOverflow();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                remove(key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every entry idle for longer than the TTL and returns how many there were.
+     */
+    public int sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (eldest.hasNext()) {
+                Entry<V> entry = eldest.next();
+                if (now - entry.lastAccessNanos <= idleNanos) {
+                    break;
+                }
+                eldest.remove();
+                totalWeight -= entry.weight;
+                removed++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        idleEvictions.addAndGet(removed);
+        return removed;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("size", entries.size());
+            stats.put("approximateBytes", totalWeight);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxWeight);
+        stats.put("idleTtlSeconds", idleNanos / 1_000_000_000L);
+        stats.put("created", created.get());
+        stats.put("idleEvictions", idleEvictions.get());
+        stats.put("sizeEvictions", sizeEvictions.get());
+        stats.put("memoryEvictions", weightEvictions.get());
+        return stats;
+    }
+
+    /**
+     * Evicts from the least recently used end, never the entry that was just accessed.
+     */
+    private void evictOverflow() {
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (entries.size() > 1 && (entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+            boolean overSize = entries.size() > maxEntries;
+            Entry<V> entry = eldest.next();
+            eldest.remove();
+            totalWeight -= entry.weight;
+            (overSize ? sizeEvictions : weightEvictions).incrementAndGet();
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        totalWeight -= entry.weight;
+    }
+
+    private static final class Entry<V> {
+        private V value;
+        private long lastAccessNanos;
+        private long weight;
+
+        private Entry(V value) {
+            this.value = value;
+        }
+    }
+}
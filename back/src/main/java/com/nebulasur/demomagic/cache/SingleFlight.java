@@ -0,0 +1,124 @@
+package com.nebulasur.demomagic.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller (the leader) runs the loader
+ * and every caller that arrives while it is running waits for the leader's result instead of
+ * running the loader again. A follower that has waited longer than the timeout stops waiting
+ * and runs the loader itself, so a stuck leader cannot hang everyone behind it.
+ */
+public final class SingleFlight<K, V> {
+
+    private final long timeoutNanos;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong followers = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public SingleFlight(long timeoutMillis) {
+        this.timeoutNanos = Math.max(1L, timeoutMillis) * 1_000_000L;
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader == null) {
+            leaders.incrementAndGet();
+            try {
+                V value = loader.get();
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        followers.incrementAndGet();
+        try {
+            return leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * {@link #execute} for loaders that complete later. Followers get the leader's result
+     * without holding a thread; one still waiting when the timeout fires starts its own load.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader == null) {
+            leaders.incrementAndGet();
+            CompletableFuture<V> loaded;
+            try {
+                loaded = loader.get();
+            } catch (RuntimeException | Error e) {
+                inFlight.remove(key, flight);
+                flight.completeExceptionally(e);
+                throw e;
+            }
+            loaded.whenComplete((value, error) -> {
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(value);
+                }
+            });
+            return flight.copy();
+        }
+
+        followers.incrementAndGet();
+        return leader.copy()
+            .orTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+            .exceptionallyCompose(error -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof TimeoutException) {
+                    timeouts.incrementAndGet();
+                    return loader.get();
+                }
+                return CompletableFuture.failedFuture(cause);
+            });
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("timeoutMillis", timeoutNanos / 1_000_000L);
+        stats.put("leaders", leaders.get());
+        stats.put("coalesced", followers.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+}
@@ -0,0 +1,421 @@
+package com.nebulasur.demomagic.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Thread-safe, size-bounded cache with W-TinyLFU admission and a time-to-live per entry.
+ *
+ * <p>New entries enter a small LRU window. An entry pushed out of the window only stays if a
+ * frequency sketch has seen its key more often than the entry the main space would evict for
+ * it, so a burst of one-off keys cannot flush popular ones. The main space is a segmented LRU:
+ * entries start on probation and move to the protected segment when hit again.
+ *
+ * <p>Entries are kept in write order as well, so {@link #sweep} removes expired ones without
+ * scanning live entries; reads also treat an expired entry as absent.
+ */
+public final class TinyLfuCache<K, V> {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.80;
+
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Index of every entry, in write order. */
+    private final LinkedHashMap<K, Node<K, V>> data = new LinkedHashMap<>();
+    private final AccessDeque<K, V> window = new AccessDeque<>();
+    private final AccessDeque<K, V> probation = new AccessDeque<>();
+    private final AccessDeque<K, V> protectedSegment = new AccessDeque<>();
+    private FrequencySketch sketch;
+    private int maximum;
+    private int windowMaximum;
+    private int protectedMaximum;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    public TinyLfuCache(int maximum, long ttlMillis) {
+        this.ttlNanos = Math.max(1L, ttlMillis) * 1_000_000L;
+        this.sketch = new FrequencySketch(Math.max(1, maximum));
+        setMaximum(maximum);
+    }
+
+    /**
+     * The live value for the key, counting a hit or a miss. Every lookup also counts towards
+     * the key's frequency, which is what later decides whether it is admitted.
+     */
+    public V getIfPresent(K key) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode());
+            Node<K, V> node = data.get(key);
+            if (node != null && now - node.expiresAtNanos > 0) {
+                remove(node);
+                expirations.incrementAndGet();
+                node = null;
+            }
+            if (node == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            onHit(node);
+            hits.incrementAndGet();
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The live value for the key, or the loader's value, which is cached unless it is null.
+     * The loader runs outside the lock and its time is recorded in the load statistics.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        V loaded = loader.apply(key);
+        loadNanos.addAndGet(System.nanoTime() - start);
+        loads.incrementAndGet();
+        if (loaded != null) {
+            put(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * {@link #get(Object, Function)} for loaders that complete later. The recorded load time
+     * runs until the loader's future completes.
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends CompletableFuture<V>> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long start = System.nanoTime();
+        return loader.apply(key).thenApply(loaded -> {
+            loadNanos.addAndGet(System.nanoTime() - start);
+            loads.incrementAndGet();
+            if (loaded != null) {
+                put(key, loaded);
+            }
+            return loaded;
+        });
+    }
+
+    public void put(K key, V value) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                node.value = value;
+                onHit(node);
+            } else {
+                node = new Node<>(key, value);
+                window.addLast(node);
+            }
+            node.expiresAtNanos = now + ttlNanos;
+            data.put(key, node);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the capacity, evicting right away when it shrinks.
+     */
+    public void setMaximum(int maximum) {
+        lock.lock();
+        try {
+            this.maximum = Math.max(1, maximum);
+            this.windowMaximum = Math.max(1, (int) (this.maximum * WINDOW_SHARE));
+            this.protectedMaximum = (int) ((this.maximum - windowMaximum) * PROTECTED_SHARE);
+            if (sketch.capacity() < this.maximum) {
+                sketch = new FrequencySketch(this.maximum);
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every expired entry and returns how many there were.
+     */
+    public int sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Node<K, V>> oldest = data.values().iterator();
+            while (oldest.hasNext()) {
+                Node<K, V> node = oldest.next();
+                if (now - node.expiresAtNanos <= 0) {
+                    break;
+                }
+                oldest.remove();
+                queueOf(node).remove(node);
+                removed++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        expirations.addAndGet(removed);
+        return removed;
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return data.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long requests = hitCount + misses.get();
+        long loadCount = loads.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("size", data.size());
+            stats.put("maxEntries", maximum);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("evictions", evictions.get());
+        stats.put("admissionRejections", rejections.get());
+        stats.put("expirations", expirations.get());
+        stats.put("loads", loadCount);
+        stats.put("averageLoadMillis", loadCount == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / loadCount);
+        return stats;
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> window.moveToBack(node);
+            case PROTECTED -> protectedSegment.moveToBack(node);
+            case PROBATION -> {
+                probation.remove(node);
+                node.queue = Queue.PROTECTED;
+                protectedSegment.addLast(node);
+                while (protectedSegment.size > protectedMaximum) {
+                    Node<K, V> demoted = protectedSegment.first();
+                    protectedSegment.remove(demoted);
+                    demoted.queue = Queue.PROBATION;
+                    probation.addLast(demoted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the window's overflow to probation, then, while over capacity, lets the newest
+     * probation entry (the candidate) compete with the oldest one (the victim) on frequency.
+     */
+    private void evict() {
+        while (window.size > windowMaximum) {
+            Node<K, V> node = window.first();
+            window.remove(node);
+            node.queue = Queue.PROBATION;
+            probation.addLast(node);
+        }
+        while (data.size() > maximum) {
+            Node<K, V> victim = probation.first();
+            Node<K, V> candidate = probation.last();
+            if (victim == null) {
+                victim = protectedSegment.first() != null ? protectedSegment.first() : window.first();
+                remove(victim);
+                evictions.incrementAndGet();
+            } else if (victim != candidate && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+                remove(candidate);
+                rejections.incrementAndGet();
+            } else {
+                remove(victim);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        queueOf(node).remove(node);
+    }
+
+    private AccessDeque<K, V> queueOf(Node<K, V> node) {
+        return switch (node.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedSegment;
+        };
+    }
+
+    private enum Queue {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+        private long expiresAtNanos;
+        private Queue queue = Queue.WINDOW;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list in access order, least recent first.
+     */
+    private static final class AccessDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private int size;
+
+        private Node<K, V> first() {
+            return head;
+        }
+
+        private Node<K, V> last() {
+            return tail;
+        }
+
+        private void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+        private void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, packed sixteen to a long. Once it has
+     * counted ten times as many events as the cache holds, every counter is halved so that
+     * popularity fades and old favourites can be displaced.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0x97CB3127L, 0xB492B66FL, 0x9AE16A3BL, 0xC3A5C85CL};
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            int words = Integer.highestOneBit(Math.max(4, Math.min(capacity, 1 << 26)) - 1) << 1;
+            this.table = new long[words];
+            this.counterMask = words * 16 - 1;
+            this.sampleSize = 10 * Math.max(1, capacity);
+        }
+
+        private int capacity() {
+            return sampleSize / 10;
+        }
+
+        private int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counter(hash, i);
+                frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xF));
+            }
+            return frequency;
+        }
+
+        private void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counter(hash, i);
+                int shift = (counter & 15) << 2;
+                if (((table[counter >>> 4] >>> shift) & 0xF) < 15) {
+                    table[counter >>> 4] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int counter(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            mixed ^= mixed >>> 32;
+            return (int) mixed & counterMask;
+        }
+    }
+}
@@ -4,11 +4,29 @@ import com.nebulasur.demomagic.dto.ChatRequest;
 import com.nebulasur.demomagic.dto.ChatResponse;
 import com.nebulasur.demomagic.service.ChatService;
 import com.nebulasur.demomagic.service.DemoProxyService;
+import jakarta.annotation.PreDestroy;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("/api")
@@ -16,17 +34,108 @@ public class ChatController {
 
     private final ChatService chatService;
     private final DemoProxyService demoProxyService;
+    private final long streamTimeoutMillis;
+    private final boolean virtualThreads;
+    private final ThreadPoolExecutor streamExecutor;
 
-    public ChatController(ChatService chatService, DemoProxyService demoProxyService) {
+    public ChatController(
+        ChatService chatService,
+        DemoProxyService demoProxyService,
+        @Value("${chat.stream.max-concurrent:64}") int streamMaxConcurrent,
+        @Value("${chat.stream.timeout-ms:60000}") long streamTimeoutMillis,
+        @Value("${chat.virtual-threads:false}") boolean virtualThreads
+    ) {
         this.chatService = chatService;
         this.demoProxyService = demoProxyService;
+        this.streamTimeoutMillis = Math.max(1L, streamTimeoutMillis);
+        this.virtualThreads = virtualThreads;
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory threadFactory = virtualThreads
+            ? Thread.ofVirtual().name("chat-stream-", 1).factory()
+            : runnable -> {
+                Thread thread = new Thread(runnable, "chat-stream-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        this.streamExecutor = new ThreadPoolExecutor(
+            0,
+            Math.max(1, streamMaxConcurrent),
+            60L,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            threadFactory
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamExecutor.shutdownNow();
     }
 
+    /**
+     * Completes asynchronously: the request thread goes back to the pool while OpenAI answers,
+     * and the response is written when the future completes. With {@code chat.virtual-threads}
+     * the request already runs on a virtual thread, so the chat is handled blocking instead.
+     */
     @PostMapping("/chat")
-    public ChatResponse chat(@Valid @RequestBody ChatRequest request) {
-        if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-            return demoProxyService.chat(request);
+    public CompletableFuture<ChatResponse> chat(@Valid @RequestBody ChatRequest request) {
+        if (virtualThreads) {
+            return CompletableFuture.completedFuture(isDemo(request) ? demoProxyService.chat(request) : chatService.chat(request));
+        }
+        if (isDemo(request)) {
+            return demoProxyService.chatAsync(request);
+        }
+        return chatService.chatAsync(request);
+    }
+
+    /**
+     * Same conversation as {@code /chat}, as Server-Sent Events. A reply generated by the model
+     * arrives as {@code token} events while it streams; any other reply, deterministic or
+     * cached, arrives as one {@code reply} event. A final {@code done} event carries the whole
+     * {@link ChatResponse}, cart actions included, and its reply is the one to keep.
+     */
+    @PostMapping(path = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@Valid @RequestBody ChatRequest request) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        try {
+            streamExecutor.execute(() -> stream(request, emitter));
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many streaming chats");
+        }
+        return emitter;
+    }
+
+    private void stream(ChatRequest request, SseEmitter emitter) {
+        try {
+            AtomicBoolean streamed = new AtomicBoolean();
+            ChatResponse response;
+            if (isDemo(request)) {
+                response = demoProxyService.chat(request);
+            } else {
+                response = chatService.chat(request, token -> {
+                    streamed.set(true);
+                    send(emitter, "token", Map.of("text", token));
+                });
+            }
+            if (!streamed.get()) {
+                send(emitter, "reply", Map.of("reply", response.getReply() == null ? "" : response.getReply()));
+            }
+            send(emitter, "done", response);
+            emitter.complete();
+        } catch (RuntimeException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static boolean isDemo(ChatRequest request) {
+        return request.getMessages() != null && !request.getMessages().isEmpty();
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return chatService.chat(request);
     }
 }
@@ -1,13 +1,43 @@
 package com.nebulasur.demomagic.controller;
 
+import com.nebulasur.demomagic.service.ChatService;
+import com.nebulasur.demomagic.service.DemoProxyService;
+import com.nebulasur.demomagic.service.KnowledgeBaseService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 public class HealthController {
 
+    private final KnowledgeBaseService knowledgeBaseService;
+    private final ChatService chatService;
+    private final DemoProxyService demoProxyService;
+
+    public HealthController(KnowledgeBaseService knowledgeBaseService, ChatService chatService, DemoProxyService demoProxyService) {
+        this.knowledgeBaseService = knowledgeBaseService;
+        this.chatService = chatService;
+        this.demoProxyService = demoProxyService;
+    }
+
     @GetMapping("/health")
     public String health() {
         return "ok";
     }
+
+    @GetMapping("/health/kb")
+    public Map<String, Object> knowledgeBase() {
+        return knowledgeBaseService.status();
+    }
+
+    @GetMapping("/health/chat")
+    public Map<String, Object> chat() {
+        return chatService.status();
+    }
+
+    @GetMapping("/health/demo")
+    public Map<String, Object> demo() {
+        return demoProxyService.status();
+    }
 }
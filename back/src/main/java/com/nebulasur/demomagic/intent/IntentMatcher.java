@@ -0,0 +1,304 @@
+package com.nebulasur.demomagic.intent;
+
+import com.nebulasur.demomagic.text.TextNormalizer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keyword and feature detection for chat messages. All keyword groups are compiled once into a
+ * single {@link KeywordAutomaton}; {@link #scan} runs normalized text through the automaton and
+ * classifies its tokens in the same pass, and {@link Signals#withMessage} adds the features
+ * that need the raw text (e-mail addresses, phone numbers and slash dates).
+ */
+public final class IntentMatcher {
+
+    private static final Pattern EMAIL = Pattern.compile("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}");
+    private static final Pattern DATE = Pattern.compile("\\b\\d{1,2}[/-]\\d{1,2}([/-]\\d{2,4})?\\b");
+    private static final int MIN_PHONE_DIGITS = 9;
+    private static final int VIN_LENGTH = 17;
+
+    private static final KeywordAutomaton AUTOMATON = KeywordAutomaton.compile(
+        Arrays.stream(KeywordGroup.values())
+            .map(group -> group.keywords.stream().map(TextNormalizer::normalize).toList())
+            .toList()
+    );
+
+    private IntentMatcher() {
+    }
+
+    public static Signals match(String message) {
+        return scan(TextNormalizer.normalize(message)).withMessage(message);
+    }
+
+    /**
+     * Keyword groups and token features of already normalized text. The result depends on
+     * nothing else, so it can be cached by that text.
+     */
+    public static Signals scan(String normalized) {
+        Map<Feature, String> features = new EnumMap<>(Feature.class);
+
+        long keywords = 0L;
+        int state = KeywordAutomaton.ROOT;
+        int tokenStart = 0;
+        int previousStart = -1;
+        int length = normalized.length();
+        for (int i = 0; i <= length; i++) {
+            if (i < length && normalized.charAt(i) != ' ') {
+                state = AUTOMATON.step(state, normalized.charAt(i));
+                keywords |= AUTOMATON.matches(state);
+                continue;
+            }
+            if (i < length) {
+                state = AUTOMATON.step(state, ' ');
+                keywords |= AUTOMATON.matches(state);
+            }
+            if (i > tokenStart) {
+                classifyToken(normalized, previousStart, tokenStart, i, features);
+                previousStart = tokenStart;
+            }
+            tokenStart = i + 1;
+        }
+        return new Signals(normalized, keywords, Collections.unmodifiableMap(features));
+    }
+
+    private static Map<Feature, String> withMessageFeatures(Map<Feature, String> scanned, String message) {
+        String raw = message == null ? "" : message.trim();
+        Map<Feature, String> features = scanned.isEmpty() ? new EnumMap<>(Feature.class) : new EnumMap<>(scanned);
+        Matcher email = EMAIL.matcher(raw);
+        if (email.find()) {
+            features.put(Feature.EMAIL, email.group());
+        }
+        Matcher date = DATE.matcher(raw);
+        if (date.find()) {
+            features.put(Feature.DATE, date.group());
+        }
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() >= MIN_PHONE_DIGITS) {
+            features.put(Feature.PHONE, digits.toString());
+        }
+        return Collections.unmodifiableMap(features);
+    }
+
+    /**
+     * Token-level features of normalized text, where word boundaries are exactly the token
+     * edges: numbers, budgets ({@code \d{4,}}), years, times ({@code 10}, {@code 10h30},
+     * {@code 5pm}, {@code 5 pm}), VINs and words of four or more letters.
+     */
+    private static void classifyToken(String text, int previousStart, int start, int end, Map<Feature, String> features) {
+        int length = end - start;
+        int digits = 0;
+        int letterRun = 0;
+        boolean longWord = false;
+        boolean vinAlphabet = true;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                letterRun = 0;
+            } else {
+                letterRun++;
+                longWord |= letterRun >= 4;
+                vinAlphabet &= c != 'i' && c != 'o' && c != 'q';
+            }
+        }
+
+        String token = text.substring(start, end);
+        if (digits == length) {
+            features.putIfAbsent(Feature.NUMBER, token);
+            if (length >= 4) {
+                features.putIfAbsent(Feature.BUDGET, token);
+            }
+            if (length == 4 && (token.startsWith("19") || token.startsWith("20"))) {
+                features.putIfAbsent(Feature.YEAR, token);
+            }
+        }
+        if (longWord) {
+            features.putIfAbsent(Feature.WORD, token);
+        }
+        if (length == VIN_LENGTH && vinAlphabet) {
+            features.putIfAbsent(Feature.VIN, token);
+        }
+        if (isClockTime(token) || isMeridiemTime(token)) {
+            features.putIfAbsent(Feature.TIME, token);
+        } else if (previousStart >= 0 && (token.equals("am") || token.equals("pm"))) {
+            String previous = text.substring(previousStart, start - 1);
+            if (previous.length() <= 2 && previous.chars().allMatch(Character::isDigit)) {
+                features.putIfAbsent(Feature.TIME, previous + " " + token);
+            }
+        }
+    }
+
+    /**
+     * Whole-token match of {@code ([01]?\d|2[0-3])h?[0-5]?\d}.
+     */
+    private static boolean isClockTime(String token) {
+        for (int hourLength = 1; hourLength <= 2 && hourLength < token.length(); hourLength++) {
+            if (!isHour(token, hourLength)) {
+                continue;
+            }
+            int minutes = token.charAt(hourLength) == 'h' ? hourLength + 1 : hourLength;
+            int rest = token.length() - minutes;
+            if (rest == 1 && isDigit(token.charAt(minutes))) {
+                return true;
+            }
+            if (rest == 2 && token.charAt(minutes) >= '0' && token.charAt(minutes) <= '5' && isDigit(token.charAt(minutes + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHour(String token, int length) {
+        if (length == 1) {
+            return isDigit(token.charAt(0));
+        }
+        char tens = token.charAt(0);
+        char units = token.charAt(1);
+        return ((tens == '0' || tens == '1') && isDigit(units)) || (tens == '2' && units >= '0' && units <= '3');
+    }
+
+    /**
+     * Whole-token match of {@code \d{1,2}(am|pm)}.
+     */
+    private static boolean isMeridiemTime(String token) {
+        int digits = token.length() - 2;
+        return (digits == 1 || digits == 2)
+            && (token.endsWith("am") || token.endsWith("pm"))
+            && isDigit(token.charAt(0))
+            && isDigit(token.charAt(digits - 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Keyword groups; a group matches when any of its keywords occurs anywhere in the
+     * normalized message, including inside a longer word.
+     */
+    public enum KeywordGroup {
+        OWN_CONTACT("mi telefono", "my phone", "mi email", "my email"),
+        CONTACT(
+            "whatsapp", "wsp", "wasap", "contacto", "atencion al cliente",
+            "persona real", "humano", "humana", "hablar con", "ventas", "soporte", "supervisor", "responsable",
+            "horario", "a que hora", "abris", "abrir", "cerrar", "cerrais", "cerras",
+            "fin de semana", "fines de semana", "sabado", "domingo", "atendeis", "abierto", "cerrado",
+            "sin cita", "cita previa", "puedo pasar ahora", "pasar ahora", "atenderme hoy",
+            "contact", "customer service", "human", "real person", "talk to", "sales", "support", "manager",
+            "opening hours", "open", "close", "weekend", "available today"),
+        OFFICE_LOCATION(
+            "donde estais", "donde estan", "ubicacion", "direccion", "oficina", "horario", "telefono", "mapa", "email", "correo",
+            "where are you", "location", "address", "office", "phone", "schedule", "maps", "email"),
+        DIRECTIONS(
+            "como llego", "como llegar", "parking", "aparcamiento", "transporte", "metro", "bus", "google maps", "indicaciones",
+            "how to get", "directions", "parking", "public transport", "maps"),
+        PARKING("parking", "aparcamiento"),
+        TRANSPORT("transporte", "metro", "bus", "autobus", "public transport"),
+        WHATSAPP("whatsapp", "wsp", "wasap"),
+        HUMAN(
+            "persona real", "humano", "humana", "agente", "ventas", "soporte", "responsable", "supervisor", "hablar con",
+            "real person", "human", "agent", "sales", "support", "manager"),
+        APPOINTMENT("cita", "concertar", "agendar", "reunion", "appointment", "book", "meeting", "schedule"),
+        COMPANY_OVERVIEW(
+            "de que va", "a que se dedica", "quienes sois", "quienes son", "informacion de la empresa",
+            "quien eres", "who are you", "about the company", "company info", "what do you do"),
+        SERVICE_LIST(
+            "servicios", "productos", "articulos", "que teneis", "que ofreces", "que ofreceis", "catalogo", "lista",
+            "services", "products", "catalog", "list"),
+        PROPERTY_SEARCH(
+            "viviendas", "vivienda", "pisos", "casas", "chalet", "obra nueva", "locales", "en venta", "comprar vivienda",
+            "properties", "apartments", "homes", "for sale"),
+        INVENTORY("pisos", "locales", "disponibles", "stock", "inventario", "referencia", "availability", "inventory", "units"),
+        RECOMMENDATION(
+            "propon", "recomienda", "que me recomiendas", "que me propones", "que opcion",
+            "suggest", "recommend", "proposal", "best option", "start with"),
+        PRIVACY(
+            "privacidad", "conversacion privada", "es privada", "rgpd", "gdpr",
+            "datos personales", "guardais mis datos", "guardar mis datos", "compartis mis datos",
+            "borrar mis datos", "que datos teneis", "se guarda lo que escribo",
+            "me esta leyendo una persona", "eres una ia", "eres ia", "ia o humano", "ia o un humano",
+            "ai or human", "human or ai", "are you ai", "are you human",
+            "privacy", "personal data", "store my data", "share my data", "delete my data"),
+        ORDER("pedido", "pedidos", "order", "orders"),
+        THIRD_PARTY("juan", "perez", "otra persona", "tercero", "another person", "third party"),
+        PERSONAL("que llevas puesto", "tu edad", "cuantos anos", "donde vives", "eres real", "what are you wearing", "your age"),
+        SMALL_TALK("chiste", "joke", "cuentame algo"),
+        GREETING("hola", "buenas", "hello", "hi", "hey", "buenos dias", "buenas tardes"),
+        CANCEL("cancelar", "cancel", "detener", "stop", "salir", "exit"),
+        CART_ADD("anade", "agrega", "add", "carrito", "cart"),
+        FILTER("filtro", "filter"),
+        LOCATION_ONLY("solo ubicacion", "solo la ubicacion", "solo direccion", "solamente la ubicacion"),
+        FRUSTRATION("no quiero", "te he dicho", "solamente", "solo eso"),
+        DATE_WORD(
+            "hoy", "manana", "pasado manana", "lunes", "martes", "miercoles", "jueves", "viernes", "sabado", "domingo",
+            "today", "tomorrow", "monday", "tuesday", "wednesday", "thursday", "friday"),
+        TIME_WORD("manana", "tarde", "noche", "morning", "afternoon", "evening"),
+        MODE("presencial", "online", "virtual", "remoto", "in person"),
+        IN_PERSON("presencial", "in person"),
+        ZONE("madrid", "barcelona", "valencia", "sevilla", "malaga", "zaragoza", "centro", "norte", "sur", "zona"),
+        BUDGET_WORD("eur", "euro", "mil", "k"),
+        ROOMS("habitacion", "habitaciones", "dormitorio", "bedroom"),
+        PROPERTY_TYPE("piso", "chalet", "casa", "obra nueva", "inversion", "local", "apartment", "house"),
+        GOAL("vivir", "alquilar", "inversion", "invertir", "living", "rent", "investment"),
+        ENGINE("motor", "diesel", "gasolina", "hdi", "tdi", "tsi", "dci", "cv");
+
+        private final List<String> keywords;
+
+        KeywordGroup(String... keywords) {
+            this.keywords = List.of(keywords);
+        }
+
+        public List<String> keywords() {
+            return keywords;
+        }
+    }
+
+    /**
+     * Token and raw-text features. Each maps to the first matching fragment of the message.
+     */
+    public enum Feature {
+        NUMBER, BUDGET, YEAR, TIME, DATE, VIN, EMAIL, PHONE, WORD
+    }
+
+    /**
+     * Everything {@link #match} found in one message.
+     */
+    public record Signals(String normalized, long keywords, Map<Feature, String> features) {
+
+        public boolean has(KeywordGroup group) {
+            return (keywords & 1L << group.ordinal()) != 0;
+        }
+
+        public boolean has(Feature feature) {
+            return features.containsKey(feature);
+        }
+
+        public String feature(Feature feature) {
+            return features.get(feature);
+        }
+
+        public boolean isBlank() {
+            return normalized.isEmpty();
+        }
+
+        /**
+         * These signals plus the features read from the original message, which normalization
+         * destroys.
+         */
+        public Signals withMessage(String message) {
+            return new Signals(normalized, keywords, withMessageFeatures(features, message));
+        }
+    }
+}
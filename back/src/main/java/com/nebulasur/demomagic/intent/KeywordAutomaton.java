@@ -0,0 +1,122 @@
+package com.nebulasur.demomagic.intent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over normalized text ({@code [a-z0-9 ]}) that reports, for every
+ * position, which keyword groups end there as a bitmask of up to 64 group ids. Failure links
+ * are folded into a dense transition table at compile time, so scanning is one array lookup
+ * per character whatever the number of keywords.
+ */
+final class KeywordAutomaton {
+
+    static final int ROOT = 0;
+
+    private static final int ALPHABET = 37;
+
+    private final int[] transitions;
+    private final long[] outputs;
+
+    private KeywordAutomaton(int[] transitions, long[] outputs) {
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Builds the automaton from {@code keywords[group]}, the already normalized keywords of
+     * each group. Keywords containing characters outside the alphabet can never match.
+     */
+    static KeywordAutomaton compile(List<List<String>> keywords) {
+        if (keywords.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " keyword groups are supported");
+        }
+
+        List<int[]> trie = new ArrayList<>();
+        List<Long> trieOutputs = new ArrayList<>();
+        trie.add(emptyRow());
+        trieOutputs.add(0L);
+        for (int group = 0; group < keywords.size(); group++) {
+            for (String keyword : keywords.get(group)) {
+                if (keyword.isEmpty() || !keyword.chars().allMatch(c -> symbol((char) c) >= 0)) {
+                    continue;
+                }
+                int state = ROOT;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int symbol = symbol(keyword.charAt(i));
+                    if (trie.get(state)[symbol] < 0) {
+                        trie.get(state)[symbol] = trie.size();
+                        trie.add(emptyRow());
+                        trieOutputs.add(0L);
+                    }
+                    state = trie.get(state)[symbol];
+                }
+                trieOutputs.set(state, trieOutputs.get(state) | 1L << group);
+            }
+        }
+
+        int states = trie.size();
+        int[] transitions = new int[states * ALPHABET];
+        long[] outputs = new long[states];
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < ALPHABET; symbol++) {
+            int child = trie.get(ROOT)[symbol];
+            transitions[symbol] = child < 0 ? ROOT : child;
+            if (child > 0) {
+                queue.add(child);
+            }
+        }
+        outputs[ROOT] = trieOutputs.get(ROOT);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = trieOutputs.get(state) | outputs[failure[state]];
+            for (int symbol = 0; symbol < ALPHABET; symbol++) {
+                int child = trie.get(state)[symbol];
+                if (child < 0) {
+                    transitions[state * ALPHABET + symbol] = transitions[failure[state] * ALPHABET + symbol];
+                } else {
+                    failure[child] = transitions[failure[state] * ALPHABET + symbol];
+                    transitions[state * ALPHABET + symbol] = child;
+                    queue.add(child);
+                }
+            }
+        }
+        return new KeywordAutomaton(transitions, outputs);
+    }
+
+    int step(int state, char c) {
+        int symbol = symbol(c);
+        return symbol < 0 ? ROOT : transitions[state * ALPHABET + symbol];
+    }
+
+    /**
+     * Groups with a keyword ending at {@code state}.
+     */
+    long matches(int state) {
+        return outputs[state];
+    }
+
+    int states() {
+        return outputs.length;
+    }
+
+    private static int symbol(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 26 + c - '0';
+        }
+        return c == ' ' ? 36 : -1;
+    }
+
+    private static int[] emptyRow() {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
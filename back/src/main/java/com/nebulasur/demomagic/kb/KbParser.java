@@ -0,0 +1,107 @@
+package com.nebulasur.demomagic.kb;
+
+import com.nebulasur.demomagic.model.KbItem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Line-oriented reader for the {@code KEY: value} KB text format. A record starts at each
+ * {@code ID:} line and runs until the next one; blank lines and lines without a colon are
+ * ignored, and a repeated key keeps its last value. Items are handed to the consumer as soon
+ * as their record ends, so memory use does not grow with the size of the file.
+ */
+public final class KbParser {
+
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int TYPE = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int BENEFITS = 4;
+    private static final int USE_CASES = 5;
+    private static final int PRICE = 6;
+    private static final int NOTES = 7;
+
+    private KbParser() {
+    }
+
+    public static List<KbItem> parse(InputStream in) throws IOException {
+        List<KbItem> items = new ArrayList<>();
+        parse(in, items::add);
+        return items;
+    }
+
+    public static void parse(InputStream in, Consumer<KbItem> sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_CHARS);
+        String[] fields = new String[NOTES + 1];
+        boolean open = false;
+
+        String rawLine;
+        while ((rawLine = reader.readLine()) != null) {
+            String line = rawLine.indexOf('\uFEFF') >= 0 ? rawLine.replace("\uFEFF", "").trim() : rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (open && line.startsWith("ID:")) {
+                sink.accept(toItem(fields));
+                Arrays.fill(fields, null);
+                open = false;
+            }
+
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                int slot = slotOf(line.substring(0, separator).trim().toUpperCase(Locale.ROOT));
+                if (slot >= 0) {
+                    fields[slot] = line.substring(separator + 1).trim();
+                }
+                open = true;
+            }
+        }
+
+        if (open) {
+            sink.accept(toItem(fields));
+        }
+    }
+
+    private static int slotOf(String key) {
+        return switch (key) {
+            case "ID" -> ID;
+            case "TITLE" -> TITLE;
+            case "TYPE" -> TYPE;
+            case "DESCRIPTION" -> DESCRIPTION;
+            case "BENEFITS" -> BENEFITS;
+            case "USE_CASES" -> USE_CASES;
+            case "PRICE" -> PRICE;
+            case "NOTES" -> NOTES;
+            default -> -1;
+        };
+    }
+
+    private static KbItem toItem(String[] fields) {
+        KbItem item = new KbItem();
+        item.setId(valueOr(fields[ID], "N/A"));
+        item.setTitle(valueOr(fields[TITLE], "Sin titulo"));
+        item.setType(valueOr(fields[TYPE], "servicio"));
+        item.setDescription(valueOr(fields[DESCRIPTION], ""));
+        item.setBenefits(valueOr(fields[BENEFITS], ""));
+        item.setUseCases(valueOr(fields[USE_CASES], ""));
+        item.setPrice(valueOr(fields[PRICE], "0 EUR"));
+        item.setNotes(valueOr(fields[NOTES], ""));
+        return item;
+    }
+
+    private static String valueOr(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+}
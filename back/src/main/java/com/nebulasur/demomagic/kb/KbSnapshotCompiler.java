@@ -0,0 +1,72 @@
+package com.nebulasur.demomagic.kb;
+
+import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.search.InvertedIndex;
+import com.nebulasur.demomagic.service.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Build step that turns every {@code kb*.txt} of a directory into a {@code kb*.snap}
+ * ({@link KbSnapshotFile}). Bound to {@code process-classes} in {@code pom.xml}.
+ * Arguments: {@code <input dir> <output dir> [embeddings=<store path>] [model=<embedding model>]};
+ * when an embedding store is given, the vectors it already holds for the items are compiled in.
+ */
+public final class KbSnapshotCompiler {
+
+    private KbSnapshotCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: KbSnapshotCompiler <input dir> <output dir> [embeddings=<path>] [model=<name>]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator > 0) {
+                options.put(args[i].substring(0, separator), args[i].substring(separator + 1).trim());
+            }
+        }
+        String model = options.getOrDefault("model", "text-embedding-3-small");
+        EmbeddingStore store = new EmbeddingStore(options.getOrDefault("embeddings", ""), model);
+
+        Files.createDirectories(output);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(input, "kb*.txt")) {
+            for (Path file : files) {
+                List<KbItem> items = new ArrayList<>();
+                InvertedIndex.Builder lexical = InvertedIndex.builder(KbText::lexicalTokens);
+                try (InputStream in = Files.newInputStream(file)) {
+                    KbParser.parse(in, item -> {
+                        items.add(item);
+                        lexical.add(KbText.embeddingText(item));
+                    });
+                }
+
+                String name = file.getFileName().toString();
+                String tenant = name.substring(2, name.length() - ".txt".length()).toUpperCase(Locale.ROOT);
+                List<String> keys = items.stream().map(item -> store.key(KbText.embeddingText(item))).toList();
+                Map<String, float[]> stored = store.load(tenant, keys);
+                List<float[]> vectors = keys.stream().map(stored::get).toList();
+                long embedded = vectors.stream().filter(Objects::nonNull).count();
+                Path target = output.resolve(name.substring(0, name.length() - ".txt".length()) + KbSnapshotFile.EXTENSION);
+                KbSnapshotFile.write(target, items, lexical.build(), model, embedded == 0 ? List.of() : vectors);
+                System.out.println("[kb-snapshot] " + target.getFileName() + ": " + items.size() + " items, " + embedded + " vectors");
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.nebulasur.demomagic.kb;
+
+import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.search.InvertedIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary, pre-indexed form of one {@code kb<ID>.txt}: the parsed items, the BM25 index built
+ * from {@link KbText#lexicalTokens} and, optionally, one embedding per item together with the
+ * model that produced it. Written at build time by {@link KbSnapshotCompiler} next to the
+ * text file as {@code kb<ID>.snap} and read back from a (usually memory-mapped) buffer.
+ */
+public final class KbSnapshotFile {
+
+    public static final String EXTENSION = ".snap";
+
+    private static final int MAGIC = 0x4B42534E;
+    private static final int FORMAT_VERSION = 1;
+
+    private KbSnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot atomically. {@code vectors} is either empty or holds one entry per
+     * item, {@code null} where an item has no embedding.
+     */
+    public static void write(Path target, List<KbItem> items, InvertedIndex lexical, String embeddingModel, List<float[]> vectors)
+        throws IOException {
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(items.size());
+            for (KbItem item : items) {
+                writeString(out, item.getId());
+                writeString(out, item.getTitle());
+                writeString(out, item.getType());
+                writeString(out, item.getDescription());
+                writeString(out, item.getBenefits());
+                writeString(out, item.getUseCases());
+                writeString(out, item.getPrice());
+                writeString(out, item.getNotes());
+            }
+            lexical.writeTo(out);
+
+            int dimensions = vectors.stream().filter(v -> v != null).mapToInt(v -> v.length).findFirst().orElse(0);
+            writeString(out, dimensions == 0 ? "" : embeddingModel);
+            out.writeInt(dimensions);
+            if (dimensions > 0) {
+                for (float[] vector : vectors) {
+                    boolean present = vector != null && vector.length == dimensions;
+                    out.writeBoolean(present);
+                    if (present) {
+                        for (float component : vector) {
+                            out.writeFloat(component);
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Decodes a snapshot. Throws {@link IOException} when the buffer is not a snapshot of
+     * this format version or is truncated, so callers can fall back to the text file.
+     */
+    public static Compiled read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported KB snapshot format");
+            }
+            int count = buffer.getInt();
+            List<KbItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                KbItem item = new KbItem();
+                item.setId(readString(buffer));
+                item.setTitle(readString(buffer));
+                item.setType(readString(buffer));
+                item.setDescription(readString(buffer));
+                item.setBenefits(readString(buffer));
+                item.setUseCases(readString(buffer));
+                item.setPrice(readString(buffer));
+                item.setNotes(readString(buffer));
+                items.add(item);
+            }
+            InvertedIndex lexical = InvertedIndex.readFrom(buffer, KbText::lexicalTokens);
+
+            String embeddingModel = readString(buffer);
+            int dimensions = buffer.getInt();
+            float[][] vectors = new float[dimensions > 0 ? count : 0][];
+            for (int row = 0; row < vectors.length; row++) {
+                if (buffer.get() != 0) {
+                    vectors[row] = new float[dimensions];
+                    buffer.asFloatBuffer().get(vectors[row]);
+                    buffer.position(buffer.position() + dimensions * Float.BYTES);
+                }
+            }
+            return new Compiled(List.copyOf(items), lexical, embeddingModel, Arrays.asList(vectors));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Truncated KB snapshot", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decoded snapshot; {@code vectors} is empty when none were compiled in.
+     */
+    public record Compiled(List<KbItem> items, InvertedIndex lexical, String embeddingModel, List<float[]> vectors) {
+    }
+}
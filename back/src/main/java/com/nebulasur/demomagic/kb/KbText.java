@@ -0,0 +1,45 @@
+package com.nebulasur.demomagic.kb;
+
+import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.text.TextNormalizer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Text derived from KB items for indexing, shared by the runtime indexer and the build-time
+ * snapshot compiler so both produce the same embedding keys and lexical terms.
+ */
+public final class KbText {
+
+    private KbText() {
+    }
+
+    /**
+     * All fields of an item joined by newlines; this is what gets embedded and indexed.
+     */
+    public static String embeddingText(KbItem item) {
+        return String.join("\n",
+            item.getId(),
+            item.getTitle(),
+            item.getType(),
+            item.getDescription(),
+            item.getBenefits(),
+            item.getUseCases(),
+            item.getPrice(),
+            item.getNotes());
+    }
+
+    /**
+     * Accent-folded tokens of more than two characters, in order and with repetitions.
+     */
+    public static List<String> lexicalTokens(String text) {
+        String normalized = TextNormalizer.normalize(text);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(normalized.split(" "))
+            .filter(token -> token.length() > 2)
+            .toList();
+    }
+}
@@ -0,0 +1,462 @@
+package com.nebulasur.demomagic.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory HNSW (hierarchical navigable small world) graph for approximate cosine search.
+ * Vectors are normalized on insert and kept in one growable {@code float[]}; {@code m} bounds
+ * the links per node on the upper layers (twice that on layer 0), {@code efConstruction} and
+ * {@code efSearch} size the candidate lists while building and querying. Inserts may run
+ * while other threads search.
+ */
+public final class HnswIndex implements VectorIndex {
+
+    /** Largest array length every JVM allocates; some reserve a few header words. */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int dimensions;
+    private final int maxNodes;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors;
+    private int[] labels;
+    private int[] nodesByLabel = new int[0];
+    private int[][][] links;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimensions, int m, int efConstruction, int efSearch, long seed) {
+        if (dimensions <= 0 || dimensions > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("dimensions must be between 1 and " + MAX_ARRAY_LENGTH);
+        }
+        this.dimensions = dimensions;
+        this.maxNodes = MAX_ARRAY_LENGTH / dimensions;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = new SplittableRandom(seed);
+        int initialCapacity = Math.min(16, maxNodes);
+        this.vectors = new float[initialCapacity * dimensions];
+        this.labels = new int[initialCapacity];
+        this.links = new int[initialCapacity][][];
+    }
+
+    /**
+     * Indexes every present row of {@code matrix}, labelled with its row number.
+     */
+    public static HnswIndex build(VectorMatrix matrix, int m, int efConstruction, int efSearch) {
+        HnswIndex index = new HnswIndex(matrix.dimensions(), m, efConstruction, efSearch, 42L);
+        float[] data = matrix.data();
+        for (int row = 0; row < matrix.rows(); row++) {
+            if (matrix.hasRow(row)) {
+                index.add(row, Arrays.copyOfRange(data, row * matrix.dimensions(), (row + 1) * matrix.dimensions()));
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long linkInts = 0;
+            for (int node = 0; node < size; node++) {
+                for (int[] level : links[node]) {
+                    linkInts += level.length;
+                }
+            }
+            return (long) size * dimensions * Float.BYTES + (linkInts + size + nodesByLabel.length) * Integer.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String kind() {
+        return "hnsw";
+    }
+
+    /**
+     * Inserts a vector under {@code label}. Vectors with the wrong dimension or no direction are ignored.
+     * All vectors share one array, so an index holds at most {@code (Integer.MAX_VALUE - 8) / dimensions}
+     * of them; inserting past that throws {@link IllegalArgumentException}.
+     */
+    public void add(int label, float[] vector) {
+        float[] unit = vector == null || vector.length != dimensions ? null : VectorMath.normalize(vector);
+        if (unit == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int node = size;
+            ensureCapacity(node + 1);
+            System.arraycopy(unit, 0, vectors, offset(node), dimensions);
+            labels[node] = label;
+            mapLabel(label, node);
+            int level = randomLevel();
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[1 + maxLinks(l)];
+            }
+            size++;
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(unit, current, l);
+            }
+
+            int[] entries = {current};
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                ScoredHeap found = searchLayer(unit, entries, efConstruction, l);
+                int[] candidates = found.idsBestFirst();
+                int[] neighbours = selectNeighbours(offset(node), candidates, m);
+                int[] own = links[node][l];
+                own[0] = neighbours.length;
+                System.arraycopy(neighbours, 0, own, 1, neighbours.length);
+                for (int neighbour : neighbours) {
+                    connect(neighbour, node, l);
+                }
+                entries = candidates;
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public float[] vector(int label) {
+        lock.readLock().lock();
+        try {
+            if (label < 0 || label >= nodesByLabel.length || nodesByLabel[label] < 0) {
+                return null;
+            }
+            int offset = offset(nodesByLabel[label]);
+            return Arrays.copyOfRange(vectors, offset, offset + dimensions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] unitQuery, int k) {
+        return search(unitQuery, k, efSearch);
+    }
+
+    /**
+     * Searches with an explicit candidate list size; a larger {@code ef} raises recall and latency.
+     */
+    public List<SearchHit> search(float[] unitQuery, int k, int efSearch) {
+        if (unitQuery == null || unitQuery.length != dimensions || k <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return List.of();
+            }
+            int ef = Math.max(efSearch, k);
+            ScoredHeap found;
+            if (size <= ef) {
+                found = new ScoredHeap(size);
+                for (int node = 0; node < size; node++) {
+                    found.push(node, similarity(unitQuery, node));
+                }
+            } else {
+                int current = entryPoint;
+                for (int l = maxLevel; l > 0; l--) {
+                    current = greedyClosest(unitQuery, current, l);
+                }
+                found = searchLayer(unitQuery, new int[]{current}, ef, 0);
+            }
+
+            int[] best = found.idsBestFirst();
+            List<SearchHit> hits = new ArrayList<>(Math.min(k, best.length));
+            for (int i = 0; i < best.length && i < k; i++) {
+                hits.add(new SearchHit(labels[best[i]], similarity(unitQuery, best[i])));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = similarity(query, neighbours[i]);
+                if (score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private ScoredHeap searchLayer(float[] query, int[] entries, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        ScoredHeap candidates = new ScoredHeap(ef * 2);
+        ScoredHeap results = new ScoredHeap(ef + 1);
+
+        for (int entry : entries) {
+            if (!visited.get(entry)) {
+                visited.set(entry);
+                float score = similarity(query, entry);
+                candidates.push(entry, -score);
+                results.push(entry, score);
+                if (results.size() > ef) {
+                    results.pop();
+                }
+            }
+        }
+
+        while (candidates.size() > 0) {
+            float score = -candidates.peekScore();
+            int node = candidates.pop();
+            if (results.size() >= ef && score < results.peekScore()) {
+                break;
+            }
+            int[] neighbours = links[node][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float neighbourScore = similarity(query, neighbour);
+                if (results.size() < ef || neighbourScore > results.peekScore()) {
+                    candidates.push(neighbour, -neighbourScore);
+                    results.push(neighbour, neighbourScore);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * HNSW neighbour heuristic: keep a candidate only if it is closer to the base vector than to
+     * every neighbour already kept, then top up with the closest pruned ones.
+     */
+    private int[] selectNeighbours(int baseOffset, int[] candidatesBestFirst, int limit) {
+        int[] selected = new int[Math.min(limit, candidatesBestFirst.length)];
+        int count = 0;
+        boolean[] taken = new boolean[candidatesBestFirst.length];
+        for (int i = 0; i < candidatesBestFirst.length && count < selected.length; i++) {
+            int candidate = candidatesBestFirst[i];
+            float toBase = VectorMath.dot(vectors, offset(candidate), vectors, baseOffset, dimensions);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (VectorMath.dot(vectors, offset(candidate), vectors, offset(selected[j]), dimensions) > toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidatesBestFirst.length && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = candidatesBestFirst[i];
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int capacity = neighbours.length - 1;
+        if (neighbours[0] < capacity) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+
+        ScoredHeap pool = new ScoredHeap(capacity + 1);
+        int fromOffset = offset(from);
+        for (int i = 1; i <= neighbours[0]; i++) {
+            pool.push(neighbours[i], VectorMath.dot(vectors, fromOffset, vectors, offset(neighbours[i]), dimensions));
+        }
+        pool.push(to, VectorMath.dot(vectors, fromOffset, vectors, offset(to), dimensions));
+        int[] kept = selectNeighbours(fromOffset, pool.idsBestFirst(), capacity);
+        neighbours[0] = kept.length;
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+    }
+
+    private float similarity(float[] query, int node) {
+        return VectorMath.dot(query, vectors, offset(node), dimensions);
+    }
+
+    /**
+     * Start of {@code node}'s vector. Capacity never exceeds {@code maxNodes}, so this fits in an int.
+     */
+    private int offset(int node) {
+        return node * dimensions;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void mapLabel(int label, int node) {
+        if (label < 0) {
+            return;
+        }
+        if (label >= nodesByLabel.length) {
+            int previous = nodesByLabel.length;
+            nodesByLabel = Arrays.copyOf(nodesByLabel, Math.max(label + 1, previous * 2));
+            Arrays.fill(nodesByLabel, previous, nodesByLabel.length, -1);
+        }
+        nodesByLabel[label] = node;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes <= labels.length) {
+            return;
+        }
+        if (nodes > maxNodes) {
+            throw new IllegalArgumentException(
+                nodes + " vectors of " + dimensions + " dimensions do not fit in one HNSW index (at most " + maxNodes + " vectors)"
+            );
+        }
+        int capacity = (int) Math.min(maxNodes, Math.max(nodes, labels.length * 2L));
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        labels = Arrays.copyOf(labels, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    /**
+     * Binary min-heap of (node, score) pairs on primitive arrays; the root is the lowest score.
+     */
+    private static final class ScoredHeap {
+        private int[] ids;
+        private float[] scores;
+        private int size;
+
+        private ScoredHeap(int capacity) {
+            ids = new int[Math.max(4, capacity)];
+            scores = new float[ids.length];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private float peekScore() {
+            return scores[0];
+        }
+
+        private void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+
+        private int pop() {
+            int top = ids[0];
+            size--;
+            if (size > 0) {
+                int id = ids[size];
+                float score = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && scores[child + 1] < scores[child]) {
+                        child++;
+                    }
+                    if (scores[child] >= score) {
+                        break;
+                    }
+                    ids[i] = ids[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                ids[i] = id;
+                scores[i] = score;
+            }
+            return top;
+        }
+
+        /**
+         * Drains the heap and returns its ids ordered from highest to lowest score.
+         */
+        private int[] idsBestFirst() {
+            int[] ordered = new int[size];
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                ordered[i] = pop();
+            }
+            return ordered;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.nebulasur.demomagic.search;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable term index over a fixed list of documents, ranked with Okapi BM25. Documents are
+ * identified by their position in the list passed to {@link #build}, so hits map straight back
+ * to KB item rows.
+ */
+public final class InvertedIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final InvertedIndex EMPTY = new InvertedIndex(Map.of(), new int[0], 0f, s -> List.of());
+
+    private final Map<String, Postings> postings;
+    private final int[] documentLengths;
+    private final float averageLength;
+    private final Function<String, List<String>> tokenizer;
+
+    private InvertedIndex(
+        Map<String, Postings> postings,
+        int[] documentLengths,
+        float averageLength,
+        Function<String, List<String>> tokenizer
+    ) {
+        this.postings = postings;
+        this.documentLengths = documentLengths;
+        this.averageLength = averageLength;
+        this.tokenizer = tokenizer;
+    }
+
+    public static InvertedIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Indexes {@code documents} with {@code tokenizer}, which must return every token occurrence
+     * (not a set) and is reused for queries.
+     */
+    public static InvertedIndex build(List<String> documents, Function<String, List<String>> tokenizer) {
+        Builder builder = builder(tokenizer);
+        documents.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Incremental form of {@link #build}: documents are added one at a time and only their
+     * postings are kept, so callers can index while streaming.
+     */
+    public static Builder builder(Function<String, List<String>> tokenizer) {
+        return new Builder(tokenizer);
+    }
+
+    public int documents() {
+        return documentLengths.length;
+    }
+
+    public int terms() {
+        return postings.size();
+    }
+
+    public long sizeInBytes() {
+        long bytes = (long) documentLengths.length * Integer.BYTES;
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            bytes += 40L + entry.getKey().length() * 2L + entry.getValue().documents.length * 2L * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the postings and document lengths; the tokenizer is not serialized and must be
+     * supplied again to {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(documentLengths.length);
+        for (int length : documentLengths) {
+            out.writeInt(length);
+        }
+        out.writeFloat(averageLength);
+        out.writeInt(postings.size());
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(term.length);
+            out.write(term);
+            Postings termPostings = entry.getValue();
+            out.writeInt(termPostings.documents.length);
+            for (int i = 0; i < termPostings.documents.length; i++) {
+                out.writeInt(termPostings.documents[i]);
+                out.writeInt(termPostings.frequencies[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}, advancing {@code buffer} past it.
+     */
+    public static InvertedIndex readFrom(ByteBuffer buffer, Function<String, List<String>> tokenizer) {
+        int[] lengths = new int[buffer.getInt()];
+        for (int doc = 0; doc < lengths.length; doc++) {
+            lengths[doc] = buffer.getInt();
+        }
+        float average = buffer.getFloat();
+        int terms = buffer.getInt();
+        Map<String, Postings> postings = new HashMap<>(terms * 2);
+        for (int t = 0; t < terms; t++) {
+            byte[] term = new byte[buffer.getInt()];
+            buffer.get(term);
+            int[] documents = new int[buffer.getInt()];
+            int[] frequencies = new int[documents.length];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = buffer.getInt();
+                frequencies[i] = buffer.getInt();
+            }
+            postings.put(new String(term, StandardCharsets.UTF_8), new Postings(documents, frequencies));
+        }
+        return new InvertedIndex(postings, lengths, average, tokenizer);
+    }
+
+    /**
+     * Returns up to {@code k} documents matching at least one query term, best first. Scores are
+     * BM25 divided by the summed IDF of the distinct query terms and capped at 1, so a document
+     * that contains every query term about once at average length scores close to 1, and query
+     * terms unknown to the catalog pull the score down.
+     */
+    public List<SearchHit> search(String query, int k) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenizer.apply(query)));
+        if (terms.isEmpty() || documentLengths.length == 0 || k <= 0) {
+            return List.of();
+        }
+
+        float[] scores = new float[documentLengths.length];
+        boolean[] touched = new boolean[documentLengths.length];
+        List<Integer> matched = new ArrayList<>();
+        float idfSum = 0f;
+
+        for (String term : terms) {
+            Postings termPostings = postings.get(term);
+            float idf = idf(termPostings == null ? 0 : termPostings.documents.length);
+            idfSum += idf;
+            if (termPostings == null) {
+                continue;
+            }
+            for (int i = 0; i < termPostings.documents.length; i++) {
+                int doc = termPostings.documents[i];
+                float tf = termPostings.frequencies[i];
+                float lengthNorm = 1f - B + B * documentLengths[doc] / averageLength;
+                scores[doc] += idf * tf * (K1 + 1f) / (tf + K1 * lengthNorm);
+                if (!touched[doc]) {
+                    touched[doc] = true;
+                    matched.add(doc);
+                }
+            }
+        }
+
+        TopK top = new TopK(k);
+        for (int doc : matched) {
+            top.offer(doc, Math.min(1f, scores[doc] / idfSum));
+        }
+        return top.toHits();
+    }
+
+    private float idf(int documentFrequency) {
+        int n = documentLengths.length;
+        return (float) Math.log(1.0 + (n - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private record Postings(int[] documents, int[] frequencies) {
+    }
+
+    public static final class Builder {
+        private final Function<String, List<String>> tokenizer;
+        private final Map<String, PostingsBuilder> postings = new HashMap<>();
+        private final Map<String, Integer> frequencies = new HashMap<>();
+        private int[] lengths = new int[16];
+        private int documents;
+        private long totalLength;
+
+        private Builder(Function<String, List<String>> tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
+        public void add(String document) {
+            int doc = documents++;
+            if (doc == lengths.length) {
+                lengths = Arrays.copyOf(lengths, doc * 2);
+            }
+            for (String token : tokenizer.apply(document)) {
+                frequencies.merge(token, 1, Integer::sum);
+                lengths[doc]++;
+            }
+            totalLength += lengths[doc];
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new PostingsBuilder()).add(doc, entry.getValue());
+            }
+            frequencies.clear();
+        }
+
+        public InvertedIndex build() {
+            Map<String, Postings> built = new HashMap<>(postings.size() * 2);
+            postings.forEach((term, builder) -> built.put(term, builder.build()));
+            float average = documents == 0 ? 0f : (float) totalLength / documents;
+            return new InvertedIndex(built, Arrays.copyOf(lengths, documents), average, tokenizer);
+        }
+    }
+
+    private static final class PostingsBuilder {
+        private int[] documents = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int doc, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private Postings build() {
+            return new Postings(Arrays.copyOf(documents, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+}
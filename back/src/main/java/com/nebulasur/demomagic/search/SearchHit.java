@@ -0,0 +1,7 @@
+package com.nebulasur.demomagic.search;
+
+/**
+ * A scored row returned by a {@link VectorIndex}; {@code row} is the caller's item position.
+ */
+public record SearchHit(int row, float score) {
+}
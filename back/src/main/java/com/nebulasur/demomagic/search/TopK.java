@@ -0,0 +1,99 @@
+package com.nebulasur.demomagic.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the {@code k} best (row, score) pairs seen so far in a bounded min-heap, so selecting
+ * from {@code n} candidates costs O(n log k) instead of a full sort. Ties on score prefer the
+ * lower row, which keeps results in catalog order like the previous stable sort did.
+ */
+public final class TopK {
+
+    private final int k;
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    public TopK(int k) {
+        this.k = Math.max(0, k);
+        this.rows = new int[this.k];
+        this.scores = new float[this.k];
+    }
+
+    public void offer(int row, float score) {
+        if (k == 0) {
+            return;
+        }
+        if (size < k) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (better(row, score, rows[0], scores[0])) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.rows[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Returns the retained pairs, best first.
+     */
+    public List<SearchHit> toHits() {
+        List<SearchHit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new SearchHit(rows[i], scores[i]));
+        }
+        hits.sort((a, b) -> better(a.row(), a.score(), b.row(), b.score()) ? -1 : 1);
+        return hits;
+    }
+
+    private static boolean better(int rowA, float scoreA, int rowB, float scoreB) {
+        return scoreA > scoreB || (scoreA == scoreB && rowA < rowB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(rows[parent], scores[parent], rows[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(rows[worst], scores[worst], rows[left], scores[left])) {
+                worst = left;
+            }
+            if (right < size && better(rows[worst], scores[worst], rows[right], scores[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        float score = scores[a];
+        rows[a] = rows[b];
+        scores[a] = scores[b];
+        rows[b] = row;
+        scores[b] = score;
+    }
+}
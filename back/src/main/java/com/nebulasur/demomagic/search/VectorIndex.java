@@ -0,0 +1,45 @@
+package com.nebulasur.demomagic.search;
+
+import java.util.List;
+
+/**
+ * Nearest-neighbour lookup over unit-length embeddings by cosine similarity.
+ */
+public interface VectorIndex {
+
+    /**
+     * Number of rows that have a vector and can be returned by {@link #search}.
+     */
+    int size();
+
+    int dimensions();
+
+    long sizeInBytes();
+
+    /**
+     * Short name of the implementation, reported in KB status.
+     */
+    String kind();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns a copy of the unit vector stored for {@code row}, or {@code null} when that row
+     * has none. Lets a rebuild reuse vectors of items that did not change.
+     */
+    float[] vector(int row);
+
+    /**
+     * Returns a unit-length copy of {@code query} matching this index, or {@code null}.
+     */
+    default float[] prepareQuery(float[] query) {
+        return query == null || query.length != dimensions() ? null : VectorMath.normalize(query);
+    }
+
+    /**
+     * Returns up to {@code k} rows, best first, for a query prepared with {@link #prepareQuery}.
+     */
+    List<SearchHit> search(float[] unitQuery, int k);
+}
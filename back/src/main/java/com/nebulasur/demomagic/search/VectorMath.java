@@ -0,0 +1,78 @@
+package com.nebulasur.demomagic.search;
+
+/**
+ * Dot products over {@code float} vectors. Uses the JDK Vector API when the
+ * {@code jdk.incubator.vector} module is present at runtime (start the JVM with
+ * {@code --add-modules jdk.incubator.vector}) and a scalar loop otherwise.
+ */
+public final class VectorMath {
+
+    private static final boolean SIMD = detectSimd();
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimdEnabled() {
+        return SIMD;
+    }
+
+    public static float dot(float[] a, float[] b, int bOffset, int length) {
+        return dot(a, 0, b, bOffset, length);
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return SIMD ? SimdVectorMath.dot(a, aOffset, b, bOffset, length) : dotScalar(a, aOffset, b, bOffset, length);
+    }
+
+    public static float dotScalar(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Returns a unit-length copy of {@code vector}, or {@code null} when it has no direction.
+     */
+    public static float[] normalize(float[] vector) {
+        if (vector == null || vector.length == 0) {
+            return null;
+        }
+        double norm = 0.0;
+        for (float component : vector) {
+            norm += (double) component * component;
+        }
+        if (norm == 0.0) {
+            return null;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+
+    private static boolean detectSimd() {
+        if (!Boolean.parseBoolean(System.getProperty("kb.vector.simd", "true"))
+            || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return SimdVectorMath.lanes() > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.nebulasur.demomagic.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Row-major {@code float} matrix of unit-length embeddings, one row per KB item. Rows are
+ * normalized once at build time so cosine similarity against a unit query is a single dot
+ * product. Items without an embedding keep an all-zero row and are reported as absent.
+ * Searching is exact: every present row is scored.
+ */
+public final class VectorMatrix implements VectorIndex {
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 20_000;
+
+    private static final VectorMatrix EMPTY = new VectorMatrix(0, 0, new float[0], new BitSet(), DEFAULT_PARALLEL_THRESHOLD);
+
+    private final int rows;
+    private final int dimensions;
+    private final float[] data;
+    private final BitSet present;
+    private final int parallelThreshold;
+
+    private VectorMatrix(int rows, int dimensions, float[] data, BitSet present, int parallelThreshold) {
+        this.rows = rows;
+        this.dimensions = dimensions;
+        this.data = data;
+        this.present = present;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public static VectorMatrix empty() {
+        return EMPTY;
+    }
+
+    public static VectorMatrix of(List<float[]> vectors) {
+        return of(vectors, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Builds a matrix from per-row vectors; {@code null} entries and vectors whose dimension
+     * differs from the first non-null one are stored as absent rows. Searches over at least
+     * {@code parallelThreshold} rows are split across the common fork-join pool. Rows times
+     * dimensions may not exceed {@link Integer#MAX_VALUE}.
+     */
+    public static VectorMatrix of(List<float[]> vectors, int parallelThreshold) {
+        int dimensions = vectors.stream().filter(v -> v != null && v.length > 0).mapToInt(v -> v.length).findFirst().orElse(0);
+        if (dimensions == 0) {
+            return EMPTY;
+        }
+
+        long length = (long) vectors.size() * dimensions;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                vectors.size() + " rows of " + dimensions + " dimensions do not fit in one matrix (at most " + Integer.MAX_VALUE + " components)"
+            );
+        }
+        float[] data = new float[(int) length];
+        BitSet present = new BitSet(vectors.size());
+        for (int row = 0; row < vectors.size(); row++) {
+            float[] vector = vectors.get(row);
+            float[] unit = vector != null && vector.length == dimensions ? VectorMath.normalize(vector) : null;
+            if (unit != null) {
+                System.arraycopy(unit, 0, data, row * dimensions, dimensions);
+                present.set(row);
+            }
+        }
+        return new VectorMatrix(vectors.size(), dimensions, data, present, Math.max(1, parallelThreshold));
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int size() {
+        return present.cardinality();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return (long) data.length * Float.BYTES;
+    }
+
+    @Override
+    public String kind() {
+        return "exact";
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return present.isEmpty();
+    }
+
+    public boolean hasRow(int row) {
+        return present.get(row);
+    }
+
+    @Override
+    public float[] vector(int row) {
+        if (row < 0 || row >= rows || !present.get(row)) {
+            return null;
+        }
+        return Arrays.copyOfRange(data, row * dimensions, (row + 1) * dimensions);
+    }
+
+    @Override
+    public List<SearchHit> search(float[] unitQuery, int k) {
+        if (rows < parallelThreshold) {
+            return scoreRange(unitQuery, k, 0, rows).toHits();
+        }
+        int partitions = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+        int partitionRows = Math.max(1024, (rows + partitions - 1) / partitions);
+        return ForkJoinPool.commonPool().invoke(new ScoreTask(unitQuery, k, 0, rows, partitionRows)).toHits();
+    }
+
+    private TopK scoreRange(float[] unitQuery, int k, int from, int to) {
+        TopK top = new TopK(k);
+        for (int row = present.nextSetBit(from); row >= 0 && row < to; row = present.nextSetBit(row + 1)) {
+            top.offer(row, VectorMath.dot(unitQuery, data, row * dimensions, dimensions));
+        }
+        return top;
+    }
+
+    float[] data() {
+        return data;
+    }
+
+    private final class ScoreTask extends RecursiveTask<TopK> {
+        private final float[] unitQuery;
+        private final int k;
+        private final int from;
+        private final int to;
+        private final int partitionRows;
+
+        private ScoreTask(float[] unitQuery, int k, int from, int to, int partitionRows) {
+            this.unitQuery = unitQuery;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            this.partitionRows = partitionRows;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= partitionRows) {
+                return scoreRange(unitQuery, k, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(unitQuery, k, from, middle, partitionRows);
+            left.fork();
+            TopK merged = new ScoreTask(unitQuery, k, middle, to, partitionRows).compute();
+            merged.addAll(left.join());
+            return merged;
+        }
+    }
+
+    /**
+     * Cosine similarity between a prepared query and {@code row}; -1 when the row is absent.
+     */
+    public float score(float[] unitQuery, int row) {
+        if (!present.get(row)) {
+            return -1f;
+        }
+        return VectorMath.dot(unitQuery, data, row * dimensions, dimensions);
+    }
+}
@@ -1,61 +1,295 @@
 package com.nebulasur.demomagic.service;
 
+import com.nebulasur.demomagic.cache.BoundedCache;
 import com.nebulasur.demomagic.dto.ChatAction;
 import com.nebulasur.demomagic.dto.ChatRequest;
 import com.nebulasur.demomagic.dto.ChatResponse;
+import com.nebulasur.demomagic.intent.IntentMatcher;
+import com.nebulasur.demomagic.intent.IntentMatcher.Feature;
+import com.nebulasur.demomagic.intent.IntentMatcher.KeywordGroup;
+import com.nebulasur.demomagic.intent.IntentMatcher.Signals;
 import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.session.ConversationState;
+import com.nebulasur.demomagic.session.ConversationState.Flow;
+import com.nebulasur.demomagic.session.ConversationState.Slot;
+import com.nebulasur.demomagic.session.InMemorySessionStore;
+import com.nebulasur.demomagic.session.MappedSessionFile;
+import com.nebulasur.demomagic.session.RemoteSessionStore;
+import com.nebulasur.demomagic.session.SessionStore;
+import com.nebulasur.demomagic.text.TextNormalizer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class ChatService {
 
+    private static final int SESSION_SAVE_ATTEMPTS = 3;
+
     private final KnowledgeBaseService knowledgeBaseService;
     private final IntentService intentService;
     private final OpenAiClient openAiClient;
     private final double minRelevanceScore;
-    private final Map<String, ConversationState> sessions = new ConcurrentHashMap<>();
+    private final BoundedCache<String, DetectedIntent> intentCache;
+    private final int intentCacheMaxMessageLength;
+    private final SessionStore sessionStore;
+    private final ScheduledExecutorService sessionSweeper;
+    private final AtomicLong statelessRequests = new AtomicLong();
+    private final AtomicLong sessionStoreErrors = new AtomicLong();
+    private final AtomicLong sessionRetries = new AtomicLong();
+    private final AtomicLong sessionConflicts = new AtomicLong();
 
     public ChatService(
         KnowledgeBaseService knowledgeBaseService,
         IntentService intentService,
         OpenAiClient openAiClient,
-        @Value("${chat.relevance.min-score:0.12}") double minRelevanceScore
-    ) {
+        @Value("${chat.relevance.min-score:0.12}") double minRelevanceScore,
+        @Value("${chat.intent-cache.max-entries:10000}") int intentCacheMaxEntries,
+        @Value("${chat.intent-cache.ttl-seconds:3600}") long intentCacheTtlSeconds,
+        @Value("${chat.intent-cache.max-message-length:80}") int intentCacheMaxMessageLength,
+        @Value("${chat.sessions.max-entries:50000}") int sessionMaxEntries,
+        @Value("${chat.sessions.max-memory-mb:64}") long sessionMaxMemoryMb,
+        @Value("${chat.sessions.idle-ttl-minutes:30}") long sessionIdleTtlMinutes,
+        @Value("${chat.sessions.sweep-interval-seconds:60}") long sessionSweepIntervalSeconds,
+        @Value("${chat.sessions.persistence:memory}") String sessionPersistence,
+        @Value("${chat.sessions.file:data/chat-sessions.dat}") String sessionFilePath,
+        @Value("${chat.sessions.remote-url:}") String sessionRemoteUrl,
+        @Value("${chat.sessions.remote-timeout-ms:2000}") long sessionRemoteTimeoutMs
+    ) throws IOException {
         this.knowledgeBaseService = knowledgeBaseService;
         this.intentService = intentService;
         this.openAiClient = openAiClient;
         this.minRelevanceScore = Math.max(0.0, Math.min(1.0, minRelevanceScore));
+        this.intentCache = new BoundedCache<>(intentCacheMaxEntries, Math.max(1L, intentCacheTtlSeconds) * 1000L);
+        this.intentCacheMaxMessageLength = Math.max(0, intentCacheMaxMessageLength);
+        long idleTtlMillis = Math.max(1L, sessionIdleTtlMinutes) * 60_000L;
+        String persistence = sessionPersistence == null ? "" : sessionPersistence.trim().toLowerCase(Locale.ROOT);
+        if ("remote".equals(persistence)) {
+            if (sessionRemoteUrl == null || sessionRemoteUrl.isBlank()) {
+                throw new IllegalStateException("chat.sessions.persistence=remote requires chat.sessions.remote-url");
+            }
+            this.sessionStore = new RemoteSessionStore(
+                sessionRemoteUrl.trim(),
+                Duration.ofMillis(Math.max(1L, sessionRemoteTimeoutMs)),
+                idleTtlMillis
+            );
+            this.sessionSweeper = null;
+        } else {
+            InMemorySessionStore store = new InMemorySessionStore(
+                sessionMaxEntries,
+                Math.max(1L, sessionMaxMemoryMb) * 1024L * 1024L,
+                idleTtlMillis,
+                "mapped".equals(persistence) ? new MappedSessionFile(Paths.get(sessionFilePath), idleTtlMillis) : null
+            );
+            long sweepSeconds = Math.max(1L, sessionSweepIntervalSeconds);
+            this.sessionSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "chat-session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.sessionSweeper.scheduleWithFixedDelay(store::sweep, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+            this.sessionStore = store;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (sessionSweeper != null) {
+            sessionSweeper.shutdownNow();
+        }
+        sessionStore.close();
     }
 
     public ChatResponse chat(ChatRequest request) {
-        String kb = normalizeKb(request.getKb());
+        return chat(request, null);
+    }
+
+    /**
+     * Like {@link #chat(ChatRequest)}, but a reply generated by the model is also handed to
+     * {@code onToken} piece by piece as it streams in. Deterministic replies produce no tokens.
+     * If the message has to be replayed after a session conflict, the replay does not stream,
+     * so the returned reply is the one to keep. When every attempt loses the race, the reply
+     * asks the user to resend instead of describing a step the stored session never took.
+     */
+    public ChatResponse chat(ChatRequest request, Consumer<String> onToken) {
+        String kb = knowledgeBaseService.resolveTenant(request.getKb());
         String lang = "en".equalsIgnoreCase(request.getLang()) ? "en" : "es";
-        String message = request.getMessage() == null ? "" : request.getMessage().trim();
-        String normalizedMessage = normalizeText(message);
-        String sessionId = (request.getSessionId() == null || request.getSessionId().isBlank())
-            ? UUID.randomUUID().toString()
-            : request.getSessionId().trim();
-        String stateKey = kb + "::" + sessionId;
+        if (request.getSessionId() == null || request.getSessionId().isBlank()) {
+            // Cannot be continued, so the state is throwaway and never enters the store.
+            statelessRequests.incrementAndGet();
+            return respond(request, new ConversationState(kb, lang), kb, lang, onToken);
+        }
+        String sessionKey = kb + "::" + request.getSessionId().trim();
+        for (int attempt = 0; attempt < SESSION_SAVE_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                sessionRetries.incrementAndGet();
+            }
+            Optional<SessionStore.Versioned> stored;
+            try {
+                stored = sessionStore.load(sessionKey);
+            } catch (IOException e) {
+                sessionStoreErrors.incrementAndGet();
+                return respond(request, new ConversationState(kb, lang), kb, lang, onToken);
+            }
+            long version = stored.map(SessionStore.Versioned::version).orElse(0L);
+            ConversationState state = stored
+                .flatMap(versioned -> ConversationState.fromBytes(versioned.record()))
+                .orElseGet(() -> new ConversationState(kb, lang));
+            ChatResponse response = respond(request, state, kb, lang, attempt == 0 ? onToken : null);
+            if (!state.isDirty() || saveSession(sessionKey, state, version)) {
+                return response;
+            }
+        }
+        // Another request kept winning the race for this session; its state stands.
+        return sessionConflictResponse(lang);
+    }
+
+    /**
+     * Non-blocking {@link #chat(ChatRequest)}: the calls to OpenAI do not hold a thread while
+     * they are in flight. The session is loaded and saved as in the blocking path, and a
+     * session conflict replays the message the same way, up to the same final resend reply.
+     */
+    public CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+        String kb = knowledgeBaseService.resolveTenant(request.getKb());
+        String lang = "en".equalsIgnoreCase(request.getLang()) ? "en" : "es";
+        if (request.getSessionId() == null || request.getSessionId().isBlank()) {
+            statelessRequests.incrementAndGet();
+            return respondAsync(request, new ConversationState(kb, lang), kb, lang);
+        }
+        return chatAsync(request, kb, lang, kb + "::" + request.getSessionId().trim(), 0);
+    }
+
+    private CompletableFuture<ChatResponse> chatAsync(ChatRequest request, String kb, String lang, String sessionKey, int attempt) {
+        if (attempt > 0) {
+            sessionRetries.incrementAndGet();
+        }
+        Optional<SessionStore.Versioned> stored;
+        try {
+            stored = sessionStore.load(sessionKey);
+        } catch (IOException e) {
+            sessionStoreErrors.incrementAndGet();
+            return respondAsync(request, new ConversationState(kb, lang), kb, lang);
+        }
+        long version = stored.map(SessionStore.Versioned::version).orElse(0L);
+        ConversationState state = stored
+            .flatMap(versioned -> ConversationState.fromBytes(versioned.record()))
+            .orElseGet(() -> new ConversationState(kb, lang));
+        return respondAsync(request, state, kb, lang).thenCompose(response -> {
+            if (!state.isDirty() || saveSession(sessionKey, state, version)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (attempt + 1 >= SESSION_SAVE_ATTEMPTS) {
+                return CompletableFuture.completedFuture(sessionConflictResponse(lang));
+            }
+            return chatAsync(request, kb, lang, sessionKey, attempt + 1);
+        });
+    }
+
+    /**
+     * Saves the state if nobody else saved the session since it was loaded. Returns false on a
+     * conflict so the caller replays the message against the newer state. A store failure only
+     * costs the session this step, so it does not fail the reply.
+     */
+    private boolean saveSession(String sessionKey, ConversationState state, long version) {
+        try {
+            return sessionStore.save(sessionKey, state.toBytes(), version);
+        } catch (IOException e) {
+            sessionStoreErrors.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Reply for a message whose state change was discarded after every save attempt conflicted.
+     */
+    private ChatResponse sessionConflictResponse(String lang) {
+        sessionConflicts.incrementAndGet();
+        return simpleResponse(
+            "en".equals(lang)
+                ? "Your conversation was updated elsewhere at the same time, so I could not save this step. Please send your message again."
+                : "Tu conversacion se ha actualizado a la vez desde otro sitio y no he podido guardar este paso. Vuelve a enviar tu mensaje, por favor."
+        );
+    }
+
+    private ChatResponse respond(ChatRequest request, ConversationState state, String kb, String lang, Consumer<String> onToken) {
+        Turn turn = turn(request, state, kb, lang);
+        ChatResponse local = respondLocally(turn, state);
+        if (local != null) {
+            return local;
+        }
+        KbPrompt prompt = kbPrompt(turn, knowledgeBaseService.search(kb, turn.message(), 5));
+        if (prompt.reply() != null) {
+            return prompt.reply();
+        }
+        Optional<String> completion = onToken == null
+            ? openAiClient.complete(prompt.systemPrompt(), prompt.userPrompt())
+            : openAiClient.completeStream(prompt.systemPrompt(), prompt.userPrompt(), onToken);
+        return kbResponse(turn, prompt, completion);
+    }
 
-        ConversationState state = sessions.computeIfAbsent(stateKey, key -> new ConversationState(kb, lang));
+    /**
+     * {@link #respond} without blocking on OpenAI: the query embedding and the completion are
+     * requested asynchronously and the reply is assembled on the thread that receives them.
+     */
+    private CompletableFuture<ChatResponse> respondAsync(ChatRequest request, ConversationState state, String kb, String lang) {
+        Turn turn = turn(request, state, kb, lang);
+        ChatResponse local = respondLocally(turn, state);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        return knowledgeBaseService.searchAsync(kb, turn.message(), 5).thenCompose(matches -> {
+            KbPrompt prompt = kbPrompt(turn, matches);
+            if (prompt.reply() != null) {
+                return CompletableFuture.completedFuture(prompt.reply());
+            }
+            return openAiClient.completeAsync(prompt.systemPrompt(), prompt.userPrompt())
+                .thenApply(completion -> kbResponse(turn, prompt, completion));
+        });
+    }
+
+    private Turn turn(ChatRequest request, ConversationState state, String kb, String lang) {
+        String message = request.getMessage() == null ? "" : request.getMessage().trim();
+        String normalizedMessage = TextNormalizer.normalize(message);
         if (!state.getLang().equalsIgnoreCase(lang)) {
             state.reset(kb, lang);
         }
 
-        List<KbItem> items = knowledgeBaseService.listItems(kb);
-        IntentService.IntentResult intentResult = intentService.detect(message, items, request.getCart());
-        Intent intent = detectIntent(kb, normalizedMessage);
+        KnowledgeBaseService.KbSnapshot snapshot = knowledgeBaseService.snapshot(kb);
+        DetectedIntent detected = detect(kb, normalizedMessage, snapshot);
+        Signals signals = detected.signals().withMessage(message);
+        IntentService.IntentResult intentResult = intentService.resolve(detected.cartIntent(), snapshot, request.getCart());
+        return new Turn(request, kb, lang, message, signals, intentResult, detected.intent());
+    }
+
+    /**
+     * Replies that need neither the knowledge base search nor the model: guided flows, fixed
+     * answers and cart shortcuts. Null when the message has to be answered from the KB.
+     */
+    private ChatResponse respondLocally(Turn turn, ConversationState state) {
+        String kb = turn.kb();
+        String lang = turn.lang();
+        String message = turn.message();
+        Signals signals = turn.signals();
+        IntentService.IntentResult intentResult = turn.intentResult();
+        Intent intent = turn.intent();
 
         if (intent == Intent.PRIVACY) {
             state.clear();
@@ -64,20 +298,20 @@ public class ChatService {
 
         if (intent == Intent.CONTACT_INFO) {
             state.clear();
-            return contactInfoResponse(kb, lang, normalizedMessage);
+            return contactInfoResponse(kb, lang, signals);
         }
 
-        ChatResponse pendingFlowReply = handlePendingFlow(state, kb, lang, message, normalizedMessage, intent, intentResult);
+        ChatResponse pendingFlowReply = handlePendingFlow(state, kb, lang, message, signals, intent, intentResult);
         if (pendingFlowReply != null) {
             return pendingFlowReply;
         }
 
         if (intent == Intent.LOCATION) {
-            return locationResponse(kb, lang, isLocationOnlyRequest(normalizedMessage) || showsFrustration(normalizedMessage));
+            return locationResponse(kb, lang, isLocationOnlyRequest(signals) || showsFrustration(signals));
         }
 
         if (intent == Intent.DIRECTIONS) {
-            return directionsResponse(kb, lang, normalizedMessage);
+            return directionsResponse(kb, lang, signals);
         }
 
         if (intent == Intent.GREETING) {
@@ -97,7 +331,7 @@ public class ChatService {
         }
 
         if (intent == Intent.PROPERTY_SEARCH) {
-            return propertySearchResponse(state, kb, lang, normalizedMessage);
+            return propertySearchResponse(state, kb, lang);
         }
 
         if (intent == Intent.APPOINTMENT) {
@@ -126,10 +360,10 @@ public class ChatService {
             );
         }
 
-        if (isAddToCartPendingVehicle(kb, normalizedMessage, intentResult)) {
+        if (isAddToCartPendingVehicle(kb, signals, intentResult)) {
             state.clear();
             state.setFlow(Flow.CARRITO_DATOS_VEHICULO);
-            state.put("cart_item_id", "C-02");
+            state.put(Slot.CART_ITEM_ID, "C-02");
             return simpleResponse(
                 "en".equals(lang)
                     ? "Perfect. To add the correct filter, I need vehicle data: brand/model, year, engine, or VIN."
@@ -137,7 +371,18 @@ public class ChatService {
             );
         }
 
-        List<KnowledgeBaseService.SearchMatch> matches = knowledgeBaseService.search(kb, message, 5);
+        return null;
+    }
+
+    /**
+     * Picks the relevant matches and builds the prompts, or settles the reply right away when
+     * nothing in the KB is relevant.
+     */
+    private KbPrompt kbPrompt(Turn turn, List<KnowledgeBaseService.SearchMatch> matches) {
+        String kb = turn.kb();
+        String lang = turn.lang();
+        Signals signals = turn.signals();
+        IntentService.IntentResult intentResult = turn.intentResult();
         List<KnowledgeBaseService.SearchMatch> filteredMatches = matches.stream()
             .filter(match -> match.score() >= minRelevanceScore)
             .toList();
@@ -148,10 +393,10 @@ public class ChatService {
         }
 
         if (resolvedMatches.isEmpty() && (intentResult.actions() == null || intentResult.actions().isEmpty())) {
-            if (isRecommendationRequest(message)) {
+            if (isRecommendationRequest(signals)) {
                 resolvedMatches = defaultRecommendations(kb);
             } else {
-                return outOfScopeResponse(lang, kb);
+                return new KbPrompt(outOfScopeResponse(lang, kb), null, null, List.of());
             }
         }
 
@@ -166,10 +411,21 @@ public class ChatService {
             .collect(Collectors.joining("\n\n---\n\n"));
 
         String systemPrompt = buildSystemPrompt(lang);
-        String userPrompt = buildUserPrompt(lang, kb, message, request.getCart(), intentResult.actions(), context);
+        String userPrompt = buildUserPrompt(lang, kb, turn.message(), turn.request().getCart(), intentResult.actions(), context);
+        return new KbPrompt(null, systemPrompt, userPrompt, relevantMatches);
+    }
 
-        String reply = openAiClient.complete(systemPrompt, userPrompt)
-            .orElseGet(() -> fallbackReply(lang, kb, message, intentResult.actions(), intentResult.item(), relevantMatches, request.getCart()));
+    private ChatResponse kbResponse(Turn turn, KbPrompt prompt, Optional<String> completion) {
+        IntentService.IntentResult intentResult = turn.intentResult();
+        String reply = completion.orElseGet(() -> fallbackReply(
+            turn.lang(),
+            turn.kb(),
+            turn.signals(),
+            intentResult.actions(),
+            intentResult.item(),
+            prompt.matches(),
+            turn.request().getCart()
+        ));
 
         ChatResponse response = new ChatResponse();
         response.setReply(reply);
@@ -179,16 +435,6 @@ public class ChatService {
         return response;
     }
 
-    private String normalizeKb(String kb) {
-        if ("B".equalsIgnoreCase(kb)) {
-            return "B";
-        }
-        if ("C".equalsIgnoreCase(kb)) {
-            return "C";
-        }
-        return "A";
-    }
-
     private ChatResponse simpleResponse(String reply) {
         ChatResponse response = new ChatResponse();
         response.setReply(reply);
@@ -198,41 +444,90 @@ public class ChatService {
         return response;
     }
 
-    private Intent detectIntent(String kb, String normalizedMessage) {
-        if (normalizedMessage.isBlank()) {
+    /**
+     * Session, cache and reply streaming statistics for {@code /health/chat}.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> sessionStats = sessionStore.stats();
+        sessionStats.put("statelessRequests", statelessRequests.get());
+        sessionStats.put("retries", sessionRetries.get());
+        sessionStats.put("conflicts", sessionConflicts.get());
+        sessionStats.put("storeErrors", sessionStoreErrors.get());
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("sessions", sessionStats);
+        status.put("intentCache", intentCache.stats());
+        status.put("streaming", openAiClient.streamingStats());
+        return status;
+    }
+
+    @EventListener
+    public void onTenantChanged(KnowledgeBaseService.TenantChangedEvent event) {
+        String prefix = event.tenant() + "::";
+        intentCache.invalidateIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Everything about a message that depends only on the tenant and its normalized text,
+     * cached for short messages since most traffic repeats a few phrases. An entry computed
+     * against a replaced item list is ignored even if the change event has not arrived yet.
+     */
+    private DetectedIntent detect(String kb, String normalizedMessage, KnowledgeBaseService.KbSnapshot snapshot) {
+        boolean cacheable = normalizedMessage.length() <= intentCacheMaxMessageLength;
+        String key = kb + "::" + normalizedMessage;
+        if (cacheable) {
+            DetectedIntent cached = intentCache.get(key);
+            if (cached != null && cached.items() == snapshot.items()) {
+                return cached;
+            }
+        }
+        Signals signals = IntentMatcher.scan(normalizedMessage);
+        DetectedIntent detected = new DetectedIntent(
+            detectIntent(kb, signals),
+            signals,
+            intentService.analyze(normalizedMessage, snapshot),
+            snapshot.items()
+        );
+        if (cacheable) {
+            intentCache.put(key, detected);
+        }
+        return detected;
+    }
+
+    private Intent detectIntent(String kb, Signals signals) {
+        if (signals.isBlank()) {
             return Intent.DEFAULT;
         }
-        if (isPrivacyRequest(normalizedMessage)) {
+        if (isPrivacyRequest(signals)) {
             return Intent.PRIVACY;
         }
-        if (asksContactInfo(normalizedMessage)) {
+        if (asksContactInfo(signals)) {
             return Intent.CONTACT_INFO;
         }
-        if (isPersonalRequest(normalizedMessage)) {
+        if (isPersonalRequest(signals)) {
             return Intent.PERSONAL;
         }
-        if (isSmallTalk(normalizedMessage)) {
+        if (isSmallTalk(signals)) {
             return Intent.SMALLTALK;
         }
-        if (isGreeting(normalizedMessage)) {
+        if (isGreeting(signals)) {
             return Intent.GREETING;
         }
-        if (asksDirections(normalizedMessage)) {
+        if (asksDirections(signals)) {
             return Intent.DIRECTIONS;
         }
-        if (asksOfficeLocation(normalizedMessage)) {
+        if (asksOfficeLocation(signals)) {
             return Intent.LOCATION;
         }
-        if (asksAppointment(normalizedMessage)) {
+        if (asksAppointment(signals)) {
             return Intent.APPOINTMENT;
         }
-        if (asksCompanyOverview(normalizedMessage)) {
+        if (asksCompanyOverview(signals)) {
             return Intent.IDENTITY;
         }
-        if (isPropertySearchIntent(kb, normalizedMessage)) {
+        if (isPropertySearchIntent(kb, signals)) {
             return Intent.PROPERTY_SEARCH;
         }
-        if (asksServiceList(normalizedMessage)) {
+        if (asksServiceList(signals)) {
             return Intent.CATALOG;
         }
         return Intent.DEFAULT;
@@ -300,7 +595,7 @@ public class ChatService {
         return simpleResponse(reply);
     }
 
-    private ChatResponse directionsResponse(String kb, String lang, String normalizedMessage) {
+    private ChatResponse directionsResponse(String kb, String lang, Signals signals) {
         KbItem company = findCompanyProfile(kb, List.of());
         if (company == null) {
             return outOfScopeResponse(lang, kb);
@@ -310,8 +605,8 @@ public class ChatService {
             return outOfScopeResponse(lang, kb);
         }
 
-        boolean asksParking = containsAny(normalizedMessage, "parking", "aparcamiento");
-        boolean asksTransport = containsAny(normalizedMessage, "transporte", "metro", "bus", "autobus", "public transport");
+        boolean asksParking = signals.has(KeywordGroup.PARKING);
+        boolean asksTransport = signals.has(KeywordGroup.TRANSPORT);
 
         StringBuilder sb = new StringBuilder();
         if ("en".equals(lang)) {
@@ -344,9 +639,9 @@ public class ChatService {
         );
     }
 
-    private ChatResponse contactInfoResponse(String kb, String lang, String normalizedMessage) {
-        if (asksDirections(normalizedMessage)) {
-            return directionsResponse(kb, lang, normalizedMessage);
+    private ChatResponse contactInfoResponse(String kb, String lang, Signals signals) {
+        if (asksDirections(signals)) {
+            return directionsResponse(kb, lang, signals);
         }
 
         KbItem company = findCompanyProfile(kb, List.of());
@@ -360,10 +655,8 @@ public class ChatService {
         String email = extractField(notes, "Email:");
         String schedule = extractField(notes, "Horario:");
 
-        boolean asksWhatsapp = containsAny(normalizedMessage, "whatsapp", "wsp", "wasap");
-        boolean asksHuman = containsAny(normalizedMessage,
-            "persona real", "humano", "humana", "agente", "ventas", "soporte", "responsable", "supervisor", "hablar con",
-            "real person", "human", "agent", "sales", "support", "manager");
+        boolean asksWhatsapp = signals.has(KeywordGroup.WHATSAPP);
+        boolean asksHuman = signals.has(KeywordGroup.HUMAN);
 
         StringBuilder sb = new StringBuilder();
         if ("en".equals(lang)) {
@@ -423,7 +716,7 @@ public class ChatService {
         return simpleResponse(sb.toString().trim());
     }
 
-    private ChatResponse propertySearchResponse(ConversationState state, String kb, String lang, String normalizedMessage) {
+    private ChatResponse propertySearchResponse(ConversationState state, String kb, String lang) {
         if (!"A".equalsIgnoreCase(kb)) {
             return simpleResponse(
                 "en".equals(lang)
@@ -446,7 +739,7 @@ public class ChatService {
         String kb,
         String lang,
         String rawMessage,
-        String normalizedMessage,
+        Signals signals,
         Intent intent,
         IntentService.IntentResult intentResult
     ) {
@@ -454,7 +747,7 @@ public class ChatService {
             return null;
         }
 
-        if (wantsToCancelFlow(normalizedMessage)) {
+        if (wantsToCancelFlow(signals)) {
             state.clear();
             return simpleResponse(
                 "en".equals(lang)
@@ -466,9 +759,9 @@ public class ChatService {
         if (intent != Intent.DEFAULT && intent != Intent.APPOINTMENT && !hasCartAction(intentResult)) {
             ChatResponse interruption;
             if (intent == Intent.LOCATION) {
-                interruption = locationResponse(kb, lang, isLocationOnlyRequest(normalizedMessage) || showsFrustration(normalizedMessage));
+                interruption = locationResponse(kb, lang, isLocationOnlyRequest(signals) || showsFrustration(signals));
             } else if (intent == Intent.DIRECTIONS) {
-                interruption = directionsResponse(kb, lang, normalizedMessage);
+                interruption = directionsResponse(kb, lang, signals);
             } else if (intent == Intent.IDENTITY) {
                 interruption = companyIdentityResponse(kb, lang);
             } else if (intent == Intent.PROPERTY_SEARCH) {
@@ -513,53 +806,53 @@ public class ChatService {
         }
 
         if (state.getFlow() == Flow.CITA_MOTIVO) {
-            if (!isValidReason(rawMessage)) {
+            if (!isValidReason(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "Please tell me the reason for the appointment (for example: advisory, quote, follow-up)."
                         : "Indica el motivo de la cita (por ejemplo: asesoria, presupuesto, seguimiento)."
                 );
             }
-            state.put("cita_motivo", rawMessage);
+            state.put(Slot.CITA_MOTIVO, rawMessage);
             state.setFlow(Flow.CITA_FECHA);
             return simpleResponse("en".equals(lang) ? "Great. What date works best for you?" : "Genial. Que fecha te viene mejor?");
         }
 
         if (state.getFlow() == Flow.CITA_FECHA) {
-            if (!looksLikeDate(normalizedMessage)) {
+            if (!looksLikeDate(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "I need a date to continue (for example: tomorrow, Thursday, 15/02)."
                         : "Necesito una fecha para continuar (por ejemplo: manana, jueves, 15/02)."
                 );
             }
-            state.put("cita_fecha", rawMessage);
+            state.put(Slot.CITA_FECHA, rawMessage);
             state.setFlow(Flow.CITA_HORA);
             return simpleResponse("en".equals(lang) ? "Perfect. What time do you prefer?" : "Perfecto. Que hora prefieres?");
         }
 
         if (state.getFlow() == Flow.CITA_HORA) {
-            if (!looksLikeTime(normalizedMessage)) {
+            if (!looksLikeTime(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "I need a valid time (for example: 10:30, afternoon, after 17:00)."
                         : "Necesito una hora valida (por ejemplo: 10:30, por la tarde, despues de las 17:00)."
                 );
             }
-            state.put("cita_hora", rawMessage);
+            state.put(Slot.CITA_HORA, rawMessage);
             state.setFlow(Flow.CITA_MODALIDAD);
             return simpleResponse("en".equals(lang) ? "In-person or online?" : "Presencial u online?");
         }
 
         if (state.getFlow() == Flow.CITA_MODALIDAD) {
-            if (!looksLikeMode(normalizedMessage)) {
+            if (!looksLikeMode(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "Please choose one mode: in-person or online."
                         : "Elige una modalidad: presencial u online."
                 );
             }
-            state.put("cita_modalidad", normalizeMode(normalizedMessage, lang));
+            state.put(Slot.CITA_MODALIDAD, normalizeMode(signals, lang));
             state.setFlow(Flow.CITA_CONTACTO);
             return simpleResponse(
                 "en".equals(lang)
@@ -569,56 +862,56 @@ public class ChatService {
         }
 
         if (state.getFlow() == Flow.CITA_CONTACTO) {
-            if (!looksLikeContact(rawMessage)) {
+            if (!looksLikeContact(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "I need a valid phone or email to confirm the appointment."
                         : "Necesito un telefono o email valido para confirmar la cita."
                 );
             }
-            state.put("cita_contacto", rawMessage);
+            state.put(Slot.CITA_CONTACTO, rawMessage);
             String summary = "en".equals(lang)
                 ? "Perfect, your appointment request is ready:\n"
-                    + "- Reason: " + state.get("cita_motivo") + "\n"
-                    + "- Date: " + state.get("cita_fecha") + "\n"
-                    + "- Time: " + state.get("cita_hora") + "\n"
-                    + "- Mode: " + state.get("cita_modalidad") + "\n"
-                    + "- Contact: " + state.get("cita_contacto") + "\n"
+                    + "- Reason: " + state.get(Slot.CITA_MOTIVO) + "\n"
+                    + "- Date: " + state.get(Slot.CITA_FECHA) + "\n"
+                    + "- Time: " + state.get(Slot.CITA_HORA) + "\n"
+                    + "- Mode: " + state.get(Slot.CITA_MODALIDAD) + "\n"
+                    + "- Contact: " + state.get(Slot.CITA_CONTACTO) + "\n"
                     + humanContact(kb, lang) + " will contact you shortly."
                 : "Perfecto, ya tengo tu solicitud de cita:\n"
-                    + "- Motivo: " + state.get("cita_motivo") + "\n"
-                    + "- Fecha: " + state.get("cita_fecha") + "\n"
-                    + "- Hora: " + state.get("cita_hora") + "\n"
-                    + "- Modalidad: " + state.get("cita_modalidad") + "\n"
-                    + "- Contacto: " + state.get("cita_contacto") + "\n"
+                    + "- Motivo: " + state.get(Slot.CITA_MOTIVO) + "\n"
+                    + "- Fecha: " + state.get(Slot.CITA_FECHA) + "\n"
+                    + "- Hora: " + state.get(Slot.CITA_HORA) + "\n"
+                    + "- Modalidad: " + state.get(Slot.CITA_MODALIDAD) + "\n"
+                    + "- Contacto: " + state.get(Slot.CITA_CONTACTO) + "\n"
                     + humanContact(kb, lang) + " te contactara en breve.";
             state.clear();
             return simpleResponse(summary);
         }
 
         if (state.getFlow() == Flow.PROPIEDAD_ZONA) {
-            if (!looksLikeZone(normalizedMessage)) {
+            if (!looksLikeZone(signals)) {
                 return simpleResponse("en".equals(lang) ? "Tell me area or city first." : "Dime primero zona o ciudad.");
             }
-            state.put("prop_zona", rawMessage);
+            state.put(Slot.PROP_ZONA, rawMessage);
             state.setFlow(Flow.PROPIEDAD_PRESUPUESTO);
             return simpleResponse("en".equals(lang) ? "Great. What budget do you have?" : "Perfecto. Que presupuesto manejas?");
         }
 
         if (state.getFlow() == Flow.PROPIEDAD_PRESUPUESTO) {
-            if (!looksLikeBudget(normalizedMessage)) {
+            if (!looksLikeBudget(signals)) {
                 return simpleResponse("en".equals(lang) ? "Please share an approximate budget." : "Indica un presupuesto aproximado.");
             }
-            state.put("prop_presupuesto", rawMessage);
+            state.put(Slot.PROP_PRESUPUESTO, rawMessage);
             state.setFlow(Flow.PROPIEDAD_HABITACIONES);
             return simpleResponse("en".equals(lang) ? "How many bedrooms do you need?" : "Cuantas habitaciones necesitas?");
         }
 
         if (state.getFlow() == Flow.PROPIEDAD_HABITACIONES) {
-            if (!looksLikeRooms(normalizedMessage)) {
+            if (!looksLikeRooms(signals)) {
                 return simpleResponse("en".equals(lang) ? "How many bedrooms?" : "Cuantas habitaciones?");
             }
-            state.put("prop_habitaciones", rawMessage);
+            state.put(Slot.PROP_HABITACIONES, rawMessage);
             state.setFlow(Flow.PROPIEDAD_TIPO);
             return simpleResponse(
                 "en".equals(lang)
@@ -628,23 +921,23 @@ public class ChatService {
         }
 
         if (state.getFlow() == Flow.PROPIEDAD_TIPO) {
-            if (!looksLikeType(normalizedMessage)) {
+            if (!looksLikeType(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "Choose type: apartment, house, new build, investment, commercial."
                         : "Elige tipo: piso, chalet, obra nueva, inversion o local."
                 );
             }
-            state.put("prop_tipo", rawMessage);
+            state.put(Slot.PROP_TIPO, rawMessage);
             state.setFlow(Flow.PROPIEDAD_OBJETIVO);
             return simpleResponse("en".equals(lang) ? "Is it for living or investment?" : "Es para vivir o inversion?");
         }
 
         if (state.getFlow() == Flow.PROPIEDAD_OBJETIVO) {
-            if (!looksLikeGoal(normalizedMessage)) {
+            if (!looksLikeGoal(signals)) {
                 return simpleResponse("en".equals(lang) ? "Is it for living, renting or investment?" : "Es para vivir, alquilar o inversion?");
             }
-            state.put("prop_objetivo", rawMessage);
+            state.put(Slot.PROP_OBJETIVO, rawMessage);
             state.clear();
             return simpleResponse(
                 "en".equals(lang)
@@ -654,14 +947,14 @@ public class ChatService {
         }
 
         if (state.getFlow() == Flow.CARRITO_DATOS_VEHICULO) {
-            if (!looksLikeVehicleData(normalizedMessage)) {
+            if (!looksLikeVehicleData(signals)) {
                 return simpleResponse(
                     "en".equals(lang)
                         ? "I still need vehicle data: brand/model, year, engine, or VIN."
                         : "Necesito datos del vehiculo: marca/modelo, ano, motor o VIN."
                 );
             }
-            KbItem item = knowledgeBaseService.findById(kb, state.get("cart_item_id"));
+            KbItem item = knowledgeBaseService.findById(kb, state.get(Slot.CART_ITEM_ID));
             state.clear();
             if (item == null) {
                 return outOfScopeResponse(lang, kb);
@@ -757,14 +1050,13 @@ public class ChatService {
     private String fallbackReply(
         String lang,
         String kb,
-        String message,
+        Signals signals,
         List<ChatAction> actions,
         KbItem actionItem,
         List<KnowledgeBaseService.SearchMatch> matches,
         List<Map<String, Object>> cart
     ) {
         boolean isEnglish = "en".equals(lang);
-        String normalized = normalizeText(message);
         StringBuilder sb = new StringBuilder();
 
         if (actions != null && !actions.isEmpty()) {
@@ -802,7 +1094,7 @@ public class ChatService {
             return sb.toString().trim();
         }
 
-        if (asksInventory(normalized) && !"C".equalsIgnoreCase(kb)) {
+        if (asksInventory(signals) && !"C".equalsIgnoreCase(kb)) {
             sb.append(isEnglish
                 ? "Right now I do not have a live inventory of properties or units in this knowledge base.\n"
                 : "Ahora mismo no tengo inventario en vivo de pisos o locales dentro de esta base.\n")
@@ -816,7 +1108,7 @@ public class ChatService {
             return sb.toString().trim();
         }
 
-        if (asksCompanyOverview(normalized)) {
+        if (asksCompanyOverview(signals)) {
             KbItem company = findCompanyProfile(kb, matches);
             if (company == null) {
                 sb.append(outOfScopeReply(lang, kb));
@@ -841,7 +1133,7 @@ public class ChatService {
             return sb.toString().trim();
         }
 
-        if (asksServiceList(normalized)) {
+        if (asksServiceList(signals)) {
             List<KbItem> services = listSellableItems(kb, 6);
             sb.append(isEnglish ? "Great, these are the main services/products available:\n" : "Genial, estos son los principales servicios/productos disponibles:\n");
             for (KbItem service : services) {
@@ -857,7 +1149,7 @@ public class ChatService {
             return sb.toString().trim();
         }
 
-        if (isRecommendationRequest(message)) {
+        if (isRecommendationRequest(signals)) {
             KbItem plan = findBestPlan(kb, matches);
             sb.append(isEnglish ? "Good idea. I suggest starting with:\n" : "Buena idea. Yo empezaria por:\n")
                 .append("- ")
@@ -952,195 +1244,133 @@ public class ChatService {
             .orElse(knowledgeBaseService.listItems(kb).isEmpty() ? null : knowledgeBaseService.listItems(kb).get(0));
     }
 
-    private boolean isRecommendationRequest(String message) {
-        String text = normalizeText(message);
-        return containsAny(text,
-            "propon", "recomienda", "que me recomiendas", "que me propones", "que opcion",
-            "suggest", "recommend", "proposal", "best option", "start with");
+    private boolean isRecommendationRequest(Signals signals) {
+        return signals.has(KeywordGroup.RECOMMENDATION);
     }
 
-    private boolean asksCompanyOverview(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "de que va", "a que se dedica", "quienes sois", "quienes son", "informacion de la empresa",
-            "quien eres", "who are you", "about the company", "company info", "what do you do");
+    private boolean asksCompanyOverview(Signals signals) {
+        return signals.has(KeywordGroup.COMPANY_OVERVIEW);
     }
 
-    private boolean asksServiceList(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "servicios", "productos", "articulos", "que teneis", "que ofreces", "que ofreceis", "catalogo", "lista",
-            "services", "products", "catalog", "list");
+    private boolean asksServiceList(Signals signals) {
+        return signals.has(KeywordGroup.SERVICE_LIST);
     }
 
-    private boolean isPropertySearchIntent(String kb, String normalizedMessage) {
-        if (!"A".equalsIgnoreCase(kb)) {
-            return false;
-        }
-        return containsAny(normalizedMessage,
-            "viviendas", "vivienda", "pisos", "casas", "chalet", "obra nueva", "locales", "en venta", "comprar vivienda",
-            "properties", "apartments", "homes", "for sale");
+    private boolean isPropertySearchIntent(String kb, Signals signals) {
+        return "A".equalsIgnoreCase(kb) && signals.has(KeywordGroup.PROPERTY_SEARCH);
     }
 
-    private boolean asksInventory(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "pisos", "locales", "disponibles", "stock", "inventario", "referencia", "availability", "inventory", "units");
+    private boolean asksInventory(Signals signals) {
+        return signals.has(KeywordGroup.INVENTORY);
     }
 
-    private boolean asksContactInfo(String normalizedMessage) {
-        if (containsAny(normalizedMessage, "mi telefono", "my phone", "mi email", "my email")) {
-            return false;
-        }
-        return asksOfficeLocation(normalizedMessage)
-            || asksDirections(normalizedMessage)
-            || containsAny(normalizedMessage,
-                "whatsapp", "wsp", "wasap", "contacto", "atencion al cliente",
-                "persona real", "humano", "humana", "hablar con", "ventas", "soporte", "supervisor", "responsable",
-                "horario", "a que hora", "abris", "abrir", "cerrar", "cerrais", "cerras",
-                "fin de semana", "fines de semana", "sabado", "domingo", "atendeis", "abierto", "cerrado",
-                "sin cita", "cita previa", "puedo pasar ahora", "pasar ahora", "atenderme hoy",
-                "contact", "customer service", "human", "real person", "talk to", "sales", "support", "manager",
-                "opening hours", "open", "close", "weekend", "available today");
+    private boolean asksContactInfo(Signals signals) {
+        return !signals.has(KeywordGroup.OWN_CONTACT)
+            && (asksOfficeLocation(signals) || asksDirections(signals) || signals.has(KeywordGroup.CONTACT));
     }
 
-    private boolean asksOfficeLocation(String normalizedMessage) {
-        if (containsAny(normalizedMessage, "mi telefono", "my phone", "mi email", "my email")) {
-            return false;
-        }
-        return containsAny(normalizedMessage,
-            "donde estais", "donde estan", "ubicacion", "direccion", "oficina", "horario", "telefono", "mapa", "email", "correo",
-            "where are you", "location", "address", "office", "phone", "schedule", "maps", "email");
+    private boolean asksOfficeLocation(Signals signals) {
+        return !signals.has(KeywordGroup.OWN_CONTACT) && signals.has(KeywordGroup.OFFICE_LOCATION);
     }
 
-    private boolean asksDirections(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "como llego", "como llegar", "parking", "aparcamiento", "transporte", "metro", "bus", "google maps", "indicaciones",
-            "how to get", "directions", "parking", "public transport", "maps");
+    private boolean asksDirections(Signals signals) {
+        return signals.has(KeywordGroup.DIRECTIONS);
     }
 
-    private boolean asksAppointment(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "cita", "concertar", "agendar", "reunion", "appointment", "book", "meeting", "schedule");
+    private boolean asksAppointment(Signals signals) {
+        return signals.has(KeywordGroup.APPOINTMENT);
     }
 
-    private boolean isPrivacyRequest(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "privacidad", "conversacion privada", "es privada", "rgpd", "gdpr",
-            "datos personales", "guardais mis datos", "guardar mis datos", "compartis mis datos",
-            "borrar mis datos", "que datos teneis", "se guarda lo que escribo",
-            "me esta leyendo una persona", "eres una ia", "eres ia", "ia o humano", "ia o un humano",
-            "ai or human", "human or ai", "are you ai", "are you human",
-            "privacy", "personal data", "store my data", "share my data", "delete my data")
-            || (containsAny(normalizedMessage, "pedido", "pedidos", "order", "orders")
-            && containsAny(normalizedMessage, "juan", "perez", "otra persona", "tercero", "another person", "third party"));
+    private boolean isPrivacyRequest(Signals signals) {
+        return signals.has(KeywordGroup.PRIVACY)
+            || (signals.has(KeywordGroup.ORDER) && signals.has(KeywordGroup.THIRD_PARTY));
     }
 
-    private boolean isPersonalRequest(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "que llevas puesto", "tu edad", "cuantos anos", "donde vives", "eres real", "what are you wearing", "your age");
+    private boolean isPersonalRequest(Signals signals) {
+        return signals.has(KeywordGroup.PERSONAL);
     }
 
-    private boolean isSmallTalk(String normalizedMessage) {
-        return containsAny(normalizedMessage, "chiste", "joke", "cuentame algo");
+    private boolean isSmallTalk(Signals signals) {
+        return signals.has(KeywordGroup.SMALL_TALK);
     }
 
-    private boolean isGreeting(String normalizedMessage) {
-        return normalizedMessage.length() <= 20
-            && containsAny(normalizedMessage, "hola", "buenas", "hello", "hi", "hey", "buenos dias", "buenas tardes");
+    private boolean isGreeting(Signals signals) {
+        return signals.normalized().length() <= 20 && signals.has(KeywordGroup.GREETING);
     }
 
-    private boolean wantsToCancelFlow(String normalizedMessage) {
-        return containsAny(normalizedMessage, "cancelar", "cancel", "detener", "stop", "salir", "exit");
+    private boolean wantsToCancelFlow(Signals signals) {
+        return signals.has(KeywordGroup.CANCEL);
     }
 
-    private boolean isAddToCartPendingVehicle(String kb, String normalizedMessage, IntentService.IntentResult intentResult) {
+    private boolean isAddToCartPendingVehicle(String kb, Signals signals, IntentService.IntentResult intentResult) {
         if (!"C".equalsIgnoreCase(kb) || intentResult.item() != null) {
             return false;
         }
-        return containsAny(normalizedMessage, "anade", "agrega", "add", "carrito", "cart")
-            && containsAny(normalizedMessage, "filtro", "filter");
+        return signals.has(KeywordGroup.CART_ADD) && signals.has(KeywordGroup.FILTER);
     }
 
-    private boolean isLocationOnlyRequest(String normalizedMessage) {
-        return containsAny(normalizedMessage, "solo ubicacion", "solo la ubicacion", "solo direccion", "solamente la ubicacion");
+    private boolean isLocationOnlyRequest(Signals signals) {
+        return signals.has(KeywordGroup.LOCATION_ONLY);
     }
 
-    private boolean showsFrustration(String normalizedMessage) {
-        return containsAny(normalizedMessage, "no quiero", "te he dicho", "solamente", "solo eso");
+    private boolean showsFrustration(Signals signals) {
+        return signals.has(KeywordGroup.FRUSTRATION);
     }
 
-    private boolean isValidReason(String rawMessage) {
-        String normalized = normalizeText(rawMessage);
+    private boolean isValidReason(Signals signals) {
+        String normalized = signals.normalized();
         return normalized.length() >= 3
             && !normalized.endsWith("?")
-            && !looksLikeDate(normalized)
-            && !looksLikeTime(normalized)
-            && !looksLikeContact(rawMessage);
+            && !looksLikeDate(signals)
+            && !looksLikeTime(signals)
+            && !looksLikeContact(signals);
     }
 
-    private boolean looksLikeDate(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "hoy", "manana", "pasado manana", "lunes", "martes", "miercoles", "jueves", "viernes", "sabado", "domingo",
-            "today", "tomorrow", "monday", "tuesday", "wednesday", "thursday", "friday")
-            || normalizedMessage.matches(".*\\b\\d{1,2}[/-]\\d{1,2}([/-]\\d{2,4})?\\b.*");
+    private boolean looksLikeDate(Signals signals) {
+        return signals.has(KeywordGroup.DATE_WORD) || signals.has(Feature.DATE);
     }
 
-    private boolean looksLikeTime(String normalizedMessage) {
-        return containsAny(normalizedMessage, "manana", "tarde", "noche", "morning", "afternoon", "evening")
-            || normalizedMessage.matches(".*\\b([01]?\\d|2[0-3])[:h.]?[0-5]?\\d\\b.*")
-            || normalizedMessage.matches(".*\\b\\d{1,2}\\s*(am|pm)\\b.*");
+    private boolean looksLikeTime(Signals signals) {
+        return signals.has(KeywordGroup.TIME_WORD) || signals.has(Feature.TIME);
     }
 
-    private boolean looksLikeMode(String normalizedMessage) {
-        return containsAny(normalizedMessage, "presencial", "online", "virtual", "remoto", "in person");
+    private boolean looksLikeMode(Signals signals) {
+        return signals.has(KeywordGroup.MODE);
     }
 
-    private String normalizeMode(String normalizedMessage, String lang) {
-        if (containsAny(normalizedMessage, "presencial", "in person")) {
+    private String normalizeMode(Signals signals, String lang) {
+        if (signals.has(KeywordGroup.IN_PERSON)) {
             return "en".equals(lang) ? "in-person" : "presencial";
         }
         return "online";
     }
 
-    private boolean looksLikeContact(String rawMessage) {
-        if (rawMessage == null || rawMessage.isBlank()) {
-            return false;
-        }
-        String text = rawMessage.trim();
-        if (text.matches(".*[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}.*")) {
-            return true;
-        }
-        String digits = text.replaceAll("[^0-9]", "");
-        return digits.length() >= 9;
+    private boolean looksLikeContact(Signals signals) {
+        return signals.has(Feature.EMAIL) || signals.has(Feature.PHONE);
     }
 
-    private boolean looksLikeZone(String normalizedMessage) {
-        return containsAny(normalizedMessage,
-            "madrid", "barcelona", "valencia", "sevilla", "malaga", "zaragoza", "centro", "norte", "sur", "zona")
-            || normalizedMessage.matches(".*[a-z]{4,}.*");
+    private boolean looksLikeZone(Signals signals) {
+        return signals.has(KeywordGroup.ZONE) || signals.has(Feature.WORD);
     }
 
-    private boolean looksLikeBudget(String normalizedMessage) {
-        return normalizedMessage.matches(".*\\b\\d{4,}\\b.*")
-            || containsAny(normalizedMessage, "eur", "euro", "mil", "k");
+    private boolean looksLikeBudget(Signals signals) {
+        return signals.has(Feature.BUDGET) || signals.has(KeywordGroup.BUDGET_WORD);
     }
 
-    private boolean looksLikeRooms(String normalizedMessage) {
-        return normalizedMessage.matches(".*\\b\\d+\\b.*")
-            || containsAny(normalizedMessage, "habitacion", "habitaciones", "dormitorio", "bedroom");
+    private boolean looksLikeRooms(Signals signals) {
+        return signals.has(Feature.NUMBER) || signals.has(KeywordGroup.ROOMS);
     }
 
-    private boolean looksLikeType(String normalizedMessage) {
-        return containsAny(normalizedMessage, "piso", "chalet", "casa", "obra nueva", "inversion", "local", "apartment", "house");
+    private boolean looksLikeType(Signals signals) {
+        return signals.has(KeywordGroup.PROPERTY_TYPE);
     }
 
-    private boolean looksLikeGoal(String normalizedMessage) {
-        return containsAny(normalizedMessage, "vivir", "alquilar", "inversion", "invertir", "living", "rent", "investment");
+    private boolean looksLikeGoal(Signals signals) {
+        return signals.has(KeywordGroup.GOAL);
     }
 
-    private boolean looksLikeVehicleData(String normalizedMessage) {
-        boolean hasYear = normalizedMessage.matches(".*\\b(19\\d{2}|20\\d{2})\\b.*");
-        boolean hasEngine = containsAny(normalizedMessage, "motor", "diesel", "gasolina", "hdi", "tdi", "tsi", "dci", "cv");
-        boolean hasVin = normalizedMessage.matches(".*\\b[a-hj-npr-z0-9]{17}\\b.*");
-        return hasVin || (hasYear && hasEngine);
+    private boolean looksLikeVehicleData(Signals signals) {
+        return signals.has(Feature.VIN) || (signals.has(Feature.YEAR) && signals.has(KeywordGroup.ENGINE));
     }
 
     private String extractField(String text, String... labels) {
@@ -1159,31 +1389,8 @@ public class ChatService {
         return "";
     }
 
-    private String normalizeText(String text) {
-        if (text == null) {
-            return "";
-        }
-        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
-        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
-    }
-
-    private boolean containsAny(String text, String... terms) {
-        for (String term : terms) {
-            if (text.contains(normalizeText(term))) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private String kbDisplayName(String kb) {
-        if ("B".equalsIgnoreCase(kb)) {
-            return "LeadWave Growth Marketing";
-        }
-        if ("C".equalsIgnoreCase(kb)) {
-            return "MotoRecambio Atlas";
-        }
-        return "Urbania Nexus Inmobiliaria";
+        return knowledgeBaseService.displayName(kb);
     }
 
     private String humanContact(String kb, String lang) {
@@ -1194,7 +1401,10 @@ public class ChatService {
         if ("C".equalsIgnoreCase(kb)) {
             return isEnglish ? "Marta Velasco (Parts Operations Lead)" : "Marta Velasco (Responsable de Operaciones de Recambios)";
         }
-        return isEnglish ? "Laura Serrano (Senior Real Estate Advisor)" : "Laura Serrano (Asesora Inmobiliaria Senior)";
+        if ("A".equalsIgnoreCase(kb)) {
+            return isEnglish ? "Laura Serrano (Senior Real Estate Advisor)" : "Laura Serrano (Asesora Inmobiliaria Senior)";
+        }
+        return isEnglish ? "the " + kbDisplayName(kb) + " sales team" : "el equipo comercial de " + kbDisplayName(kb);
     }
 
     private String cartSummary(List<Map<String, Object>> cart) {
@@ -1235,6 +1445,26 @@ public class ChatService {
             + " te contactara con una respuesta mas personalizada.";
     }
 
+    private record Turn(
+        ChatRequest request,
+        String kb,
+        String lang,
+        String message,
+        Signals signals,
+        IntentService.IntentResult intentResult,
+        Intent intent
+    ) {
+    }
+
+    /**
+     * Prompts for the model, or the reply itself when the KB has nothing relevant.
+     */
+    private record KbPrompt(ChatResponse reply, String systemPrompt, String userPrompt, List<KnowledgeBaseService.SearchMatch> matches) {
+    }
+
+    private record DetectedIntent(Intent intent, Signals signals, IntentService.CartIntent cartIntent, List<KbItem> items) {
+    }
+
     private enum Intent {
         DEFAULT,
         GREETING,
@@ -1249,66 +1479,4 @@ public class ChatService {
         PERSONAL,
         SMALLTALK
     }
-
-    private enum Flow {
-        NONE,
-        CITA_MOTIVO,
-        CITA_FECHA,
-        CITA_HORA,
-        CITA_MODALIDAD,
-        CITA_CONTACTO,
-        PROPIEDAD_ZONA,
-        PROPIEDAD_PRESUPUESTO,
-        PROPIEDAD_HABITACIONES,
-        PROPIEDAD_TIPO,
-        PROPIEDAD_OBJETIVO,
-        CARRITO_DATOS_VEHICULO
-    }
-
-    private static final class ConversationState {
-        private String tenant;
-        private String lang;
-        private Flow flow = Flow.NONE;
-        private final Map<String, String> data = new HashMap<>();
-
-        private ConversationState(String tenant, String lang) {
-            this.tenant = tenant;
-            this.lang = lang;
-        }
-
-        private String getTenant() {
-            return tenant;
-        }
-
-        private String getLang() {
-            return lang;
-        }
-
-        private Flow getFlow() {
-            return flow;
-        }
-
-        private void setFlow(Flow flow) {
-            this.flow = flow;
-        }
-
-        private void put(String key, String value) {
-            data.put(key, value == null ? "" : value.trim());
-        }
-
-        private String get(String key) {
-            return data.getOrDefault(key, "");
-        }
-
-        private void clear() {
-            flow = Flow.NONE;
-            data.clear();
-        }
-
-        private void reset(String tenant, String lang) {
-            this.tenant = tenant;
-            this.lang = lang;
-            clear();
-        }
-    }
 }
@@ -1,18 +1,37 @@
 package com.nebulasur.demomagic.service;
 
+import com.nebulasur.demomagic.cache.SemanticCache;
+import com.nebulasur.demomagic.cache.SingleFlight;
+import com.nebulasur.demomagic.cache.TinyLfuCache;
 import com.nebulasur.demomagic.dto.ChatMessage;
 import com.nebulasur.demomagic.dto.ChatRequest;
 import com.nebulasur.demomagic.dto.ChatResponse;
 import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.search.VectorMath;
+import com.nebulasur.demomagic.text.TextNormalizer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class DemoProxyService {
@@ -21,18 +40,71 @@ public class DemoProxyService {
     private final KnowledgeBaseService knowledgeBaseService;
     private final int maxMessages;
     private final long cacheTtlMillis;
-    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final int cacheMaxEntries;
+    private final Map<String, Double> cacheShares;
+    private final Map<String, TinyLfuCache<String, String>> caches = new ConcurrentHashMap<>();
+    private final ReentrantLock cachesLock = new ReentrantLock();
+    private final SingleFlight<String, String> upstreamCalls;
+    private final SemanticCache<String> semanticCache;
+    private final double semanticVerifySampleRate;
+    private final double semanticVerifyThreshold;
+    private final ThreadPoolExecutor semanticVerifier;
+    private final ScheduledExecutorService cacheSweeper;
 
     public DemoProxyService(
         OpenAiClient openAiClient,
         KnowledgeBaseService knowledgeBaseService,
         @Value("${chat.demo.max-messages:8}") int maxMessages,
-        @Value("${chat.demo.cache-ttl-seconds:45}") long cacheTtlSeconds
+        @Value("${chat.demo.cache-ttl-seconds:45}") long cacheTtlSeconds,
+        @Value("${chat.demo.cache-max-entries:10000}") int cacheMaxEntries,
+        @Value("${chat.demo.cache-tenant-shares:}") String cacheTenantShares,
+        @Value("${chat.demo.cache-sweep-interval-seconds:30}") long cacheSweepIntervalSeconds,
+        @Value("${chat.demo.coalesce-timeout-ms:15000}") long coalesceTimeoutMs,
+        @Value("${chat.demo.semantic-cache.enabled:false}") boolean semanticCacheEnabled,
+        @Value("${chat.demo.semantic-cache.threshold:0.92}") double semanticCacheThreshold,
+        @Value("${chat.demo.semantic-cache.max-entries:1000}") int semanticCacheMaxEntries,
+        @Value("${chat.demo.semantic-cache.verify-sample-rate:0.05}") double semanticVerifySampleRate,
+        @Value("${chat.demo.semantic-cache.verify-threshold:0.85}") double semanticVerifyThreshold
     ) {
         this.openAiClient = openAiClient;
         this.knowledgeBaseService = knowledgeBaseService;
         this.maxMessages = Math.max(1, maxMessages);
         this.cacheTtlMillis = Math.max(1L, cacheTtlSeconds) * 1000L;
+        this.cacheMaxEntries = Math.max(1, cacheMaxEntries);
+        this.cacheShares = parseShares(cacheTenantShares);
+        this.upstreamCalls = new SingleFlight<>(coalesceTimeoutMs);
+        this.semanticCache = semanticCacheEnabled
+            ? new SemanticCache<>(semanticCacheMaxEntries, cacheTtlMillis, semanticCacheThreshold)
+            : null;
+        this.semanticVerifySampleRate = Math.max(0.0, Math.min(1.0, semanticVerifySampleRate));
+        this.semanticVerifyThreshold = semanticVerifyThreshold;
+        this.semanticVerifier = semanticCacheEnabled
+            ? new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(32), runnable -> {
+                Thread thread = new Thread(runnable, "demo-semantic-verifier");
+                thread.setDaemon(true);
+                return thread;
+            })
+            : null;
+        long sweepSeconds = Math.max(1L, cacheSweepIntervalSeconds);
+        this.cacheSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "demo-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cacheSweeper.scheduleWithFixedDelay(
+            () -> caches.values().forEach(TinyLfuCache::sweep),
+            sweepSeconds,
+            sweepSeconds,
+            TimeUnit.SECONDS
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cacheSweeper.shutdownNow();
+        if (semanticVerifier != null) {
+            semanticVerifier.shutdownNow();
+        }
     }
 
     public ChatResponse chat(ChatRequest request) {
@@ -45,20 +117,196 @@ public class DemoProxyService {
             return simpleResponse(fallbackReply(lang, tenant));
         }
 
-        String cacheKey = tenant + "::" + lang + "::" + normalizeText(lastUserMessage);
-        ChatResponse cached = getCached(cacheKey);
-        if (cached != null) {
-            return cached;
+        String cacheKey = lang + "::" + TextNormalizer.normalize(lastUserMessage);
+        // Identical questions arriving together share one upstream call.
+        String reply = cache(tenant).get(cacheKey, key -> upstreamCalls.execute(
+            tenant + "::" + key,
+            () -> generateReply(tenant, lang, conversation, lastUserMessage)
+        ));
+        return simpleResponse(reply);
+    }
+
+    /**
+     * {@link #chat} without blocking on OpenAI. Shares the response cache and the in-flight
+     * calls with the blocking path.
+     */
+    public CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+        String tenant = normalizeTenant(request.getTenantId(), request.getKb());
+        String lang = "en".equalsIgnoreCase(request.getLang()) ? "en" : "es";
+        List<ChatMessage> conversation = sanitizeMessages(request.getMessages(), request.getMessage());
+        String lastUserMessage = findLastUserMessage(conversation);
+
+        if (lastUserMessage.isBlank()) {
+            return CompletableFuture.completedFuture(simpleResponse(fallbackReply(lang, tenant)));
         }
 
-        TenantProfile profile = tenantProfile(tenant, lang);
-        String systemPrompt = buildSystemPrompt(profile, lang);
+        String cacheKey = lang + "::" + TextNormalizer.normalize(lastUserMessage);
+        return cache(tenant).getAsync(cacheKey, key -> upstreamCalls.executeAsync(
+            tenant + "::" + key,
+            () -> generateReplyAsync(tenant, lang, conversation, lastUserMessage)
+        )).thenApply(this::simpleResponse);
+    }
+
+    @EventListener
+    public void onTenantChanged(KnowledgeBaseService.TenantChangedEvent event) {
+        TinyLfuCache<String, String> cache = caches.get(event.tenant());
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        if (semanticCache != null) {
+            semanticCache.invalidatePartitions(event.tenant() + "::");
+        }
+    }
 
-        String reply = openAiClient.complete(systemPrompt, conversation)
-            .orElseGet(() -> fallbackReply(lang, tenant));
+    /**
+     * Asks the model, unless the semantic cache holds the reply to a question close enough to
+     * this one. Only real completions are stored there, never the canned fallback.
+     */
+    private String generateReply(String tenant, String lang, List<ChatMessage> conversation, String lastUserMessage) {
+        String systemPrompt = buildSystemPrompt(tenantProfile(tenant, lang), lang);
+        if (semanticCache == null) {
+            return openAiClient.complete(systemPrompt, conversation).orElseGet(() -> fallbackReply(lang, tenant));
+        }
 
-        putCache(cacheKey, reply);
-        return simpleResponse(reply);
+        String partition = tenant + "::" + lang;
+        Optional<float[]> query = knowledgeBaseService.embedQuery(lastUserMessage);
+        Optional<String> cached = semanticHit(partition, query, systemPrompt, conversation);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        Optional<String> completion = openAiClient.complete(systemPrompt, conversation);
+        completion.ifPresent(reply -> query.ifPresent(vector -> semanticCache.put(partition, vector, reply)));
+        return completion.orElseGet(() -> fallbackReply(lang, tenant));
+    }
+
+    private CompletableFuture<String> generateReplyAsync(String tenant, String lang, List<ChatMessage> conversation, String lastUserMessage) {
+        String systemPrompt = buildSystemPrompt(tenantProfile(tenant, lang), lang);
+        if (semanticCache == null) {
+            return openAiClient.completeAsync(systemPrompt, conversation)
+                .thenApply(completion -> completion.orElseGet(() -> fallbackReply(lang, tenant)));
+        }
+
+        String partition = tenant + "::" + lang;
+        return knowledgeBaseService.embedQueryAsync(lastUserMessage).thenCompose(query -> {
+            Optional<String> cached = semanticHit(partition, query, systemPrompt, conversation);
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(cached.get());
+            }
+            return openAiClient.completeAsync(systemPrompt, conversation).thenApply(completion -> {
+                completion.ifPresent(reply -> query.ifPresent(vector -> semanticCache.put(partition, vector, reply)));
+                return completion.orElseGet(() -> fallbackReply(lang, tenant));
+            });
+        });
+    }
+
+    private Optional<String> semanticHit(String partition, Optional<float[]> query, String systemPrompt, List<ChatMessage> conversation) {
+        Optional<SemanticCache.Hit<String>> hit = query.flatMap(vector -> semanticCache.lookup(partition, vector));
+        if (hit.isPresent() && ThreadLocalRandom.current().nextDouble() < semanticVerifySampleRate) {
+            verifyLater(partition, hit.get(), systemPrompt, conversation);
+        }
+        return hit.map(SemanticCache.Hit::value);
+    }
+
+    /**
+     * Shadow-checks a semantic hit off the request path: asks the model anyway and compares the
+     * embeddings of both replies. A hit whose reply is too far from the fresh one counts as a
+     * false hit and its entry is dropped. Checks that find the queue full are skipped.
+     */
+    private void verifyLater(String partition, SemanticCache.Hit<String> hit, String systemPrompt, List<ChatMessage> conversation) {
+        try {
+            semanticVerifier.execute(() -> openAiClient.complete(systemPrompt, conversation).ifPresent(fresh -> {
+                List<Optional<float[]>> vectors = openAiClient.embedBatch(List.of(hit.value(), fresh));
+                if (vectors.get(0).isEmpty() || vectors.get(1).isEmpty()) {
+                    return;
+                }
+                float[] cached = VectorMath.normalize(vectors.get(0).get());
+                float[] current = VectorMath.normalize(vectors.get(1).get());
+                if (cached == null || current == null || cached.length != current.length) {
+                    return;
+                }
+                boolean falseHit = VectorMath.dot(cached, current, 0, cached.length) < semanticVerifyThreshold;
+                semanticCache.recordVerification(falseHit);
+                if (falseHit) {
+                    semanticCache.invalidate(partition, hit.id());
+                }
+            }));
+        } catch (RejectedExecutionException ignored) {
+            // Verification is best effort.
+        }
+    }
+
+    /**
+     * Response cache statistics per tenant and upstream call coalescing for {@code /health/demo}.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> tenants = new TreeMap<>();
+        caches.forEach((tenant, cache) -> tenants.put(tenant, cache.stats()));
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("maxEntries", cacheMaxEntries);
+        status.put("ttlSeconds", cacheTtlMillis / 1000L);
+        status.put("tenants", tenants);
+        status.put("coalescing", upstreamCalls.stats());
+        if (semanticCache != null) {
+            status.put("semanticCache", semanticCache.stats());
+        }
+        return status;
+    }
+
+    /**
+     * The tenant's partition of the response cache. Partitions split the overall capacity by
+     * their configured shares (1 unless listed), so a busy tenant cannot push every other
+     * tenant's answers out; a new partition rebalances the existing ones.
+     */
+    private TinyLfuCache<String, String> cache(String tenant) {
+        TinyLfuCache<String, String> cache = caches.get(tenant);
+        if (cache != null) {
+            return cache;
+        }
+        cachesLock.lock();
+        try {
+            cache = caches.get(tenant);
+            if (cache == null) {
+                cache = new TinyLfuCache<>(1, cacheTtlMillis);
+                caches.put(tenant, cache);
+                double totalShare = caches.keySet().stream().mapToDouble(this::cacheShare).sum();
+                caches.forEach((name, partition) ->
+                    partition.setMaximum((int) Math.max(1L, Math.round(cacheMaxEntries * cacheShare(name) / totalShare)))
+                );
+            }
+            return cache;
+        } finally {
+            cachesLock.unlock();
+        }
+    }
+
+    private double cacheShare(String tenant) {
+        return cacheShares.getOrDefault(tenant, 1.0);
+    }
+
+    /**
+     * Parses {@code A=2,B=0.5} into tenant weights; malformed or non-positive entries are ignored.
+     */
+    private static Map<String, Double> parseShares(String raw) {
+        Map<String, Double> shares = new HashMap<>();
+        if (raw == null || raw.isBlank()) {
+            return shares;
+        }
+        for (String entry : raw.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                double share = Double.parseDouble(entry.substring(separator + 1).trim());
+                if (share > 0.0) {
+                    shares.put(entry.substring(0, separator).trim().toUpperCase(Locale.ROOT), share);
+                }
+            } catch (NumberFormatException ignored) {
+                // Skip the entry.
+            }
+        }
+        return shares;
     }
 
     private List<ChatMessage> sanitizeMessages(List<ChatMessage> incoming, String fallbackMessage) {
@@ -116,32 +364,9 @@ public class DemoProxyService {
         return response;
     }
 
-    private ChatResponse getCached(String key) {
-        CacheEntry entry = cache.get(key);
-        long now = System.currentTimeMillis();
-        if (entry == null) {
-            return null;
-        }
-        if (entry.expiresAtMillis < now) {
-            cache.remove(key);
-            return null;
-        }
-        return simpleResponse(entry.reply);
-    }
-
-    private void putCache(String key, String reply) {
-        cache.put(key, new CacheEntry(reply, System.currentTimeMillis() + cacheTtlMillis));
-    }
-
     private String normalizeTenant(String tenantId, String kb) {
         String raw = (tenantId == null || tenantId.isBlank()) ? kb : tenantId;
-        if ("B".equalsIgnoreCase(raw)) {
-            return "B";
-        }
-        if ("C".equalsIgnoreCase(raw)) {
-            return "C";
-        }
-        return "A";
+        return knowledgeBaseService.resolveTenant(raw);
     }
 
     private String buildSystemPrompt(TenantProfile profile, String lang) {
@@ -184,13 +409,7 @@ public class DemoProxyService {
     }
 
     private String displayName(String tenant) {
-        if ("B".equalsIgnoreCase(tenant)) {
-            return "LeadWave Growth Marketing";
-        }
-        if ("C".equalsIgnoreCase(tenant)) {
-            return "MotoRecambio Atlas";
-        }
-        return "Urbania Nexus Inmobiliaria";
+        return knowledgeBaseService.displayName(tenant);
     }
 
     private TenantProfile tenantProfile(String tenant, String lang) {
@@ -254,6 +473,21 @@ public class DemoProxyService {
             );
         }
 
+        if (!"A".equalsIgnoreCase(tenant)) {
+            return new TenantProfile(
+                displayName(tenant),
+                "en".equals(lang) ? "Assistant" : "Asistente",
+                "general",
+                "en".equals(lang)
+                    ? List.of("products and services", "pricing", "contact details")
+                    : List.of("productos y servicios", "precios", "datos de contacto"),
+                "en".equals(lang) ? "not available" : "no disponible",
+                "en".equals(lang) ? "not available" : "no disponible",
+                "en".equals(lang) ? "not available" : "no disponible",
+                "en".equals(lang) ? "not available" : "no disponible"
+            );
+        }
+
         return new TenantProfile(
             "Urbania Nexus Inmobiliaria",
             "Laura Serrano",
@@ -284,17 +518,6 @@ public class DemoProxyService {
         return "";
     }
 
-    private String normalizeText(String text) {
-        if (text == null) {
-            return "";
-        }
-        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
-        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
-    }
-
-    private record CacheEntry(String reply, long expiresAtMillis) {
-    }
-
     private record TenantProfile(
         String company,
         String agentName,
@@ -0,0 +1,227 @@
+package com.nebulasur.demomagic.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * On-disk cache of KB item embeddings, keyed by a SHA-256 of the embedding model and the
+ * embedded text. Each tenant has its own file next to the configured path ({@code
+ * embeddings.bin} becomes {@code embeddings-A.bin}), a flat binary list of (hash, dimensions,
+ * float components) holding exactly the vectors of that tenant's current items, so loading or
+ * saving one tenant never touches the others. A shared file from before the split is still
+ * read for tenants that have no file of their own yet.
+ */
+@Component
+public class EmbeddingStore {
+
+    private static final int MAGIC = 0x4B424556;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private final Path path;
+    private final String embeddingModel;
+    private final Map<String, ReentrantLock> tenantLocks = new ConcurrentHashMap<>();
+
+    public EmbeddingStore(
+        @Value("${kb.embeddings.store-path:kb-cache/embeddings.bin}") String storePath,
+        @Value("${openai.embedding.model:text-embedding-3-small}") String embeddingModel
+    ) {
+        this.path = storePath == null || storePath.isBlank() ? null : Paths.get(storePath.trim());
+        this.embeddingModel = embeddingModel;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public String key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(embeddingModel.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Reads the tenant's vectors stored under {@code keys}.
+     */
+    public Map<String, float[]> load(String tenant, Collection<String> keys) {
+        Set<String> wanted = keys instanceof Set<String> set ? set : new HashSet<>(keys);
+        if (!isEnabled() || wanted.isEmpty()) {
+            return new HashMap<>();
+        }
+        Path file = tenantPath(tenant);
+        return read(Files.isRegularFile(file) ? file : path, wanted::contains);
+    }
+
+    /**
+     * Makes {@code vectors} the tenant's whole store, dropping entries of items that were edited
+     * or removed. Nothing is written when the file already holds exactly these keys.
+     */
+    public void save(String tenant, Map<String, float[]> vectors) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Path file = tenantPath(tenant);
+        ReentrantLock lock = tenantLocks.computeIfAbsent(tenant, key -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (vectors.keySet().equals(storedKeys(file))) {
+                return;
+            }
+            Path tmp = createTempFile(file);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                writeHeader(out, vectors.size());
+                for (Map.Entry<String, float[]> entry : vectors.entrySet()) {
+                    writeEntry(out, HexFormat.of().parseHex(entry.getKey()), entry.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Persisting is best effort: the in-memory vectors are already usable.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path tenantPath(String tenant) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return path.resolveSibling(stem + "-" + tenant + extension);
+    }
+
+    /**
+     * Keys in the file, read by skipping over the vectors; null when the file is missing or
+     * unreadable, so it gets rewritten.
+     */
+    private Set<String> storedKeys(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int count = readHeader(in);
+            long remaining = Files.size(file) - HEADER_BYTES;
+            Set<String> keys = new HashSet<>();
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                keys.add(HexFormat.of().formatHex(hash));
+                remaining -= HASH_BYTES + Integer.BYTES;
+                long vectorBytes = (long) readDimensions(in, remaining) * Float.BYTES;
+                in.skipNBytes(vectorBytes);
+                remaining -= vectorBytes;
+            }
+            return keys;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, float[]> read(Path file, Predicate<String> wanted) {
+        Map<String, float[]> vectors = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return vectors;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int count = readHeader(in);
+            long remaining = Files.size(file) - HEADER_BYTES;
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                String key = HexFormat.of().formatHex(hash);
+                remaining -= HASH_BYTES + Integer.BYTES;
+                int dimensions = readDimensions(in, remaining);
+                if (wanted.test(key)) {
+                    vectors.put(key, readVector(in, dimensions));
+                } else {
+                    in.skipNBytes((long) dimensions * Float.BYTES);
+                }
+                remaining -= (long) dimensions * Float.BYTES;
+            }
+        } catch (IOException e) {
+            // A truncated or corrupt store only costs a re-embed, never a failed boot.
+            vectors.clear();
+        }
+        return vectors;
+    }
+
+    private int readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported embedding store format");
+        }
+        return in.readInt();
+    }
+
+    /**
+     * Reads an entry's dimension count and rejects one the rest of the file cannot hold, so a
+     * corrupt length ends in the re-embed path instead of a negative or huge allocation.
+     */
+    private int readDimensions(DataInputStream in, long remainingBytes) throws IOException {
+        int dimensions = in.readInt();
+        if (dimensions <= 0 || (long) dimensions * Float.BYTES > remainingBytes) {
+            throw new IOException("Corrupt embedding store entry of " + dimensions + " dimensions");
+        }
+        return dimensions;
+    }
+
+    private float[] readVector(DataInputStream in, int dimensions) throws IOException {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] = in.readFloat();
+        }
+        return vector;
+    }
+
+    private void writeHeader(DataOutputStream out, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(count);
+    }
+
+    private void writeEntry(DataOutputStream out, byte[] hash, float[] vector) throws IOException {
+        out.write(hash);
+        out.writeInt(vector.length);
+        for (float component : vector) {
+            out.writeFloat(component);
+        }
+    }
+
+    private Path createTempFile(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    }
+}
@@ -2,79 +2,112 @@ package com.nebulasur.demomagic.service;
 
 import com.nebulasur.demomagic.dto.ChatAction;
 import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.text.TextNormalizer;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Cart intents (add, remove, clear, show) and the KB item a message refers to. Keywords are
+ * normalized once; item ids, titles and title/type tokens are indexed per tenant and the index
+ * is rebuilt only when the tenant's item list is replaced.
+ */
 @Service
 public class IntentService {
 
-    public IntentResult detect(String message, List<KbItem> kbItems, List<Map<String, Object>> cart) {
-        String normalized = normalize(message);
-        List<ChatAction> actions = new ArrayList<>();
-        KbItem matchedItem = null;
+    private static final double MIN_ITEM_SCORE = 0.18;
+    private static final int MIN_TOKEN_LENGTH = 3;
 
-        boolean wantsAdd = containsAny(normalized,
-            "anade", "agrega", "agregar", "suma", "incluye", "mete", "add", "include", "put in cart", "add to cart");
+    private static final List<String> ADD = keywords(
+        "anade", "agrega", "agregar", "suma", "incluye", "mete", "add", "include", "put in cart", "add to cart");
+    private static final List<String> REMOVE = keywords(
+        "quita", "elimina", "saca", "borra", "remove", "delete", "drop");
+    private static final List<String> CLEAR = keywords(
+        "vaciar carrito", "vacia carrito", "limpia carrito", "clear cart", "empty cart");
+    private static final List<String> SHOW = keywords(
+        "ver carrito", "mostrar carrito", "muestrame carrito", "show cart", "view cart", "total carrito", "cart total");
 
-        boolean wantsRemove = containsAny(normalized,
-            "quita", "elimina", "saca", "borra", "remove", "delete", "drop");
+    private final Map<String, ItemIndex> itemIndexes = new ConcurrentHashMap<>();
 
-        boolean wantsClear = containsAny(normalized,
-            "vaciar carrito", "vacia carrito", "limpia carrito", "clear cart", "empty cart");
+    public IntentResult detect(String message, KnowledgeBaseService.KbSnapshot snapshot, List<Map<String, Object>> cart) {
+        return resolve(analyze(TextNormalizer.normalize(message), snapshot), snapshot, cart);
+    }
 
-        boolean wantsShow = containsAny(normalized,
-            "ver carrito", "mostrar carrito", "muestrame carrito", "show cart", "view cart", "total carrito", "cart total");
+    /**
+     * The part of {@link #detect} that does not depend on the cart: which cart verbs the
+     * normalized message uses and which KB item it names, if any.
+     */
+    public CartIntent analyze(String normalized, KnowledgeBaseService.KbSnapshot snapshot) {
+        boolean wantsAdd = containsAny(normalized, ADD);
+        boolean wantsRemove = containsAny(normalized, REMOVE);
+        boolean wantsClear = containsAny(normalized, CLEAR);
+        boolean wantsShow = containsAny(normalized, SHOW);
+        KbItem item = wantsAdd || wantsRemove ? itemIndex(snapshot).bestMatch(normalized) : null;
+        return new CartIntent(normalized, wantsAdd, wantsRemove, wantsClear, wantsShow, item);
+    }
 
-        if (wantsAdd || wantsRemove) {
-            matchedItem = bestItemMatch(normalized, kbItems);
-            if (matchedItem == null) {
-                matchedItem = matchFromCart(normalized, cart, kbItems);
-            }
+    /**
+     * Turns a {@link CartIntent} into actions, falling back to the items already in the cart
+     * when the message names no KB item.
+     */
+    public IntentResult resolve(CartIntent intent, KnowledgeBaseService.KbSnapshot snapshot, List<Map<String, Object>> cart) {
+        List<ChatAction> actions = new ArrayList<>();
+        KbItem matchedItem = intent.item();
+        if ((intent.add() || intent.remove()) && matchedItem == null) {
+            matchedItem = matchFromCart(intent.normalized(), cart, itemIndex(snapshot));
         }
 
-        if (wantsAdd && matchedItem != null) {
+        if (intent.add() && matchedItem != null) {
             actions.add(new ChatAction("ADD", matchedItem.getId()));
         }
 
-        if (wantsRemove && matchedItem != null) {
+        if (intent.remove() && matchedItem != null) {
             actions.add(new ChatAction("REMOVE", matchedItem.getId()));
         }
 
-        if (wantsClear) {
+        if (intent.clear()) {
             actions.add(new ChatAction("CLEAR", null));
         }
 
-        if (wantsShow) {
+        if (intent.show()) {
             actions.add(new ChatAction("SHOW", null));
         }
 
         return new IntentResult(actions, matchedItem);
     }
 
-    private KbItem bestItemMatch(String message, List<KbItem> items) {
-        KbItem winner = null;
-        double winnerScore = 0.0;
+    /**
+     * Drops the tenant's index when its items are replaced or evicted, so an evicted tenant
+     * does not stay in memory through it.
+     */
+    @EventListener
+    public void onTenantChanged(KnowledgeBaseService.TenantChangedEvent event) {
+        itemIndexes.remove(event.tenant());
+    }
 
-        for (KbItem item : items) {
-            double score = scoreItemMatch(message, item);
-            if (score > winnerScore) {
-                winnerScore = score;
-                winner = item;
-            }
+    /**
+     * Index for the snapshot's item list. Snapshots that only add vectors share the list, so
+     * the index survives warm-up and is rebuilt after a reload or an eviction.
+     */
+    private ItemIndex itemIndex(KnowledgeBaseService.KbSnapshot snapshot) {
+        ItemIndex index = itemIndexes.get(snapshot.tenant());
+        if (index == null || index.items != snapshot.items()) {
+            index = new ItemIndex(snapshot.items());
+            itemIndexes.put(snapshot.tenant(), index);
         }
-
-        return winnerScore >= 0.18 ? winner : null;
+        return index;
     }
 
-    private KbItem matchFromCart(String message, List<Map<String, Object>> cart, List<KbItem> items) {
+    private KbItem matchFromCart(String message, List<Map<String, Object>> cart, ItemIndex index) {
         if (cart == null || cart.isEmpty()) {
             return null;
         }
@@ -82,79 +115,165 @@ public class IntentService {
         for (Map<String, Object> entry : cart) {
             Object idValue = entry.get("id");
             Object titleValue = entry.get("title");
-            if (idValue != null && message.contains(normalize(String.valueOf(idValue)))) {
-                return findById(items, String.valueOf(idValue));
+            if (idValue != null && message.contains(TextNormalizer.normalize(String.valueOf(idValue)))) {
+                return index.byId.get(String.valueOf(idValue).toLowerCase(Locale.ROOT));
             }
-            if (titleValue != null && message.contains(normalize(String.valueOf(titleValue)))) {
-                return findByTitle(items, String.valueOf(titleValue));
+            if (titleValue != null && message.contains(TextNormalizer.normalize(String.valueOf(titleValue)))) {
+                return index.byTitle.get(String.valueOf(titleValue).toLowerCase(Locale.ROOT));
             }
         }
         return null;
     }
 
-    private KbItem findById(List<KbItem> items, String id) {
-        for (KbItem item : items) {
-            if (item.getId().equalsIgnoreCase(id)) {
-                return item;
+    private static Set<String> tokenize(String normalized) {
+        Set<String> tokens = new HashSet<>();
+        for (String token : normalized.split(" ")) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                tokens.add(token);
             }
         }
-        return null;
+        return tokens;
+    }
+
+    private static List<String> keywords(String... terms) {
+        return Arrays.stream(terms).map(TextNormalizer::normalize).toList();
     }
 
-    private KbItem findByTitle(List<KbItem> items, String title) {
-        for (KbItem item : items) {
-            if (item.getTitle().equalsIgnoreCase(title)) {
-                return item;
+    private static boolean containsAny(String text, List<String> terms) {
+        for (String term : terms) {
+            if (text.contains(term)) {
+                return true;
             }
         }
-        return null;
+        return false;
+    }
+
+    public record IntentResult(List<ChatAction> actions, KbItem item) {
     }
 
-    private double scoreItemMatch(String message, KbItem item) {
-        String id = normalize(item.getId());
-        String title = normalize(item.getTitle());
-        String type = normalize(item.getType());
+    public record CartIntent(String normalized, boolean add, boolean remove, boolean clear, boolean show, KbItem item) {
+    }
 
-        if (message.contains(id)) {
-            return 1.0;
-        }
-        if (message.contains(title)) {
-            return 0.9;
+    private record Phrase(int row, String[] tokens) {
+    }
+
+    /**
+     * Item lookup for one tenant. A message names an item when its normalized id (score 1.0)
+     * or title (0.9) appears in it as a run of whole tokens; otherwise an item scores the share
+     * of its title and type tokens found in the message. The first item with the best score
+     * wins if it reaches {@link #MIN_ITEM_SCORE}.
+     */
+    private static final class ItemIndex {
+        private final List<KbItem> items;
+        private final Map<String, List<Phrase>> idsByFirstToken = new HashMap<>();
+        private final Map<String, List<Phrase>> titlesByFirstToken = new HashMap<>();
+        private final Map<String, int[]> rowsByToken;
+        private final int[] tokenCounts;
+        private final Map<String, KbItem> byId = new HashMap<>();
+        private final Map<String, KbItem> byTitle = new HashMap<>();
+        private int firstBlankId = -1;
+        private int firstBlankTitle = -1;
+
+        private ItemIndex(List<KbItem> items) {
+            this.items = items;
+            this.tokenCounts = new int[items.size()];
+            Map<String, List<Integer>> rows = new HashMap<>();
+            for (int row = 0; row < items.size(); row++) {
+                KbItem item = items.get(row);
+                String id = TextNormalizer.normalize(item.getId());
+                String title = TextNormalizer.normalize(item.getTitle());
+                if (id.isEmpty()) {
+                    firstBlankId = firstBlankId < 0 ? row : firstBlankId;
+                } else {
+                    addPhrase(idsByFirstToken, row, id);
+                }
+                if (title.isEmpty()) {
+                    firstBlankTitle = firstBlankTitle < 0 ? row : firstBlankTitle;
+                } else {
+                    addPhrase(titlesByFirstToken, row, title);
+                }
+
+                Set<String> tokens = tokenize(TextNormalizer.normalize(title + " " + TextNormalizer.normalize(item.getType())));
+                tokenCounts[row] = tokens.size();
+                for (String token : tokens) {
+                    rows.computeIfAbsent(token, key -> new ArrayList<>()).add(row);
+                }
+                if (item.getId() != null) {
+                    byId.putIfAbsent(item.getId().toLowerCase(Locale.ROOT), item);
+                }
+                if (item.getTitle() != null) {
+                    byTitle.putIfAbsent(item.getTitle().toLowerCase(Locale.ROOT), item);
+                }
+            }
+            this.rowsByToken = new HashMap<>(rows.size() * 2);
+            rows.forEach((token, list) -> rowsByToken.put(token, list.stream().mapToInt(Integer::intValue).toArray()));
         }
 
-        Set<String> messageTokens = tokenize(message);
-        Set<String> itemTokens = tokenize(title + " " + type);
-        if (messageTokens.isEmpty() || itemTokens.isEmpty()) {
-            return 0.0;
+        private static void addPhrase(Map<String, List<Phrase>> phrases, int row, String normalized) {
+            String[] tokens = normalized.split(" ");
+            phrases.computeIfAbsent(tokens[0], key -> new ArrayList<>()).add(new Phrase(row, tokens));
         }
 
-        long overlap = messageTokens.stream().filter(itemTokens::contains).count();
-        return (double) overlap / itemTokens.size();
-    }
+        private KbItem bestMatch(String message) {
+            String[] messageTokens = message.isEmpty() ? new String[0] : message.split(" ");
+            Map<Integer, Double> scores = new HashMap<>();
 
-    private Set<String> tokenize(String input) {
-        return new HashSet<>(Arrays.stream(normalize(input).split("\\s+"))
-            .filter(token -> token.length() > 2)
-            .toList());
-    }
+            Map<Integer, Integer> overlap = new HashMap<>();
+            for (String token : tokenize(message)) {
+                int[] rows = rowsByToken.get(token);
+                if (rows != null) {
+                    for (int row : rows) {
+                        overlap.merge(row, 1, Integer::sum);
+                    }
+                }
+            }
+            overlap.forEach((row, count) -> scores.put(row, (double) count / tokenCounts[row]));
+
+            markPhrases(titlesByFirstToken, messageTokens, scores, 0.9);
+            if (firstBlankTitle >= 0) {
+                scores.put(firstBlankTitle, 0.9);
+            }
+            markPhrases(idsByFirstToken, messageTokens, scores, 1.0);
+            if (firstBlankId >= 0) {
+                scores.put(firstBlankId, 1.0);
+            }
 
-    private String normalize(String text) {
-        if (text == null) {
-            return "";
+            int winner = -1;
+            double winnerScore = 0.0;
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                double score = entry.getValue();
+                if (score > winnerScore || (score == winnerScore && entry.getKey() < winner)) {
+                    winnerScore = score;
+                    winner = entry.getKey();
+                }
+            }
+            return winnerScore >= MIN_ITEM_SCORE ? items.get(winner) : null;
         }
-        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
-        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
-    }
 
-    private boolean containsAny(String text, String... terms) {
-        for (String term : terms) {
-            if (text.contains(normalize(term))) {
-                return true;
+        private static void markPhrases(Map<String, List<Phrase>> phrases, String[] message, Map<Integer, Double> scores, double score) {
+            for (int start = 0; start < message.length; start++) {
+                List<Phrase> candidates = phrases.get(message[start]);
+                if (candidates == null) {
+                    continue;
+                }
+                for (Phrase phrase : candidates) {
+                    if (startsAt(message, start, phrase.tokens())) {
+                        scores.put(phrase.row(), score);
+                    }
+                }
             }
         }
-        return false;
-    }
 
-    public record IntentResult(List<ChatAction> actions, KbItem item) {
+        private static boolean startsAt(String[] message, int start, String[] tokens) {
+            if (start + tokens.length > message.length) {
+                return false;
+            }
+            for (int i = 1; i < tokens.length; i++) {
+                if (!message[start + i].equals(tokens[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
@@ -1,204 +1,811 @@
 package com.nebulasur.demomagic.service;
 
+import com.nebulasur.demomagic.cache.BoundedCache;
+import com.nebulasur.demomagic.kb.KbParser;
+import com.nebulasur.demomagic.kb.KbSnapshotFile;
+import com.nebulasur.demomagic.kb.KbText;
 import com.nebulasur.demomagic.model.KbItem;
+import com.nebulasur.demomagic.search.HnswIndex;
+import com.nebulasur.demomagic.search.InvertedIndex;
+import com.nebulasur.demomagic.search.VectorIndex;
+import com.nebulasur.demomagic.search.VectorMath;
+import com.nebulasur.demomagic.search.VectorMatrix;
+import com.nebulasur.demomagic.text.TextNormalizer;
 import jakarta.annotation.PostConstruct;
-import org.springframework.core.io.ClassPathResource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 @Service
 public class KnowledgeBaseService {
 
-    private final OpenAiClient openAiClient;
-
-    private final Map<String, List<KbItem>> kbItems = new HashMap<>();
-    private final Map<String, Map<String, List<Double>>> kbVectors = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeBaseService.class);
 
-    public KnowledgeBaseService(OpenAiClient openAiClient) {
+    private final OpenAiClient openAiClient;
+    private final EmbeddingStore embeddingStore;
+    private final TenantRegistry tenantRegistry;
+    private final ApplicationEventPublisher events;
+    private final int warmupThreads;
+    private final BoundedCache<String, float[]> queryEmbeddings;
+    private final int hnswMinItems;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final int hnswEfSearch;
+    private final int parallelThreshold;
+    private final long reloadDebounceMillis;
+    private final long memoryBudgetBytes;
+    private final String preload;
+
+    private final Map<String, TenantSlot> tenants = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicInteger pendingWarmups = new AtomicInteger();
+    private final Set<String> preloadsWarming = ConcurrentHashMap.newKeySet();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong warmupFailures = new AtomicLong();
+    private final ReentrantLock budgetLock = new ReentrantLock();
+    private ExecutorService warmupExecutor;
+    private WatchService watchService;
+
+    public KnowledgeBaseService(
+        OpenAiClient openAiClient,
+        EmbeddingStore embeddingStore,
+        TenantRegistry tenantRegistry,
+        ApplicationEventPublisher events,
+        @Value("${kb.warmup.threads:4}") int warmupThreads,
+        @Value("${kb.query-cache.max-entries:5000}") int queryCacheMaxEntries,
+        @Value("${kb.query-cache.ttl-seconds:86400}") long queryCacheTtlSeconds,
+        @Value("${kb.search.hnsw.min-items:5000}") int hnswMinItems,
+        @Value("${kb.search.hnsw.m:16}") int hnswM,
+        @Value("${kb.search.hnsw.ef-construction:100}") int hnswEfConstruction,
+        @Value("${kb.search.hnsw.ef-search:64}") int hnswEfSearch,
+        @Value("${kb.search.parallel-threshold:20000}") int parallelThreshold,
+        @Value("${kb.reload.debounce-ms:500}") long reloadDebounceMillis,
+        @Value("${kb.tenants.memory-budget-mb:512}") long memoryBudgetMb,
+        @Value("${kb.tenants.preload:}") String preload
+    ) {
         this.openAiClient = openAiClient;
+        this.embeddingStore = embeddingStore;
+        this.tenantRegistry = tenantRegistry;
+        this.events = events;
+        this.warmupThreads = Math.max(1, warmupThreads);
+        this.queryEmbeddings = new BoundedCache<>(queryCacheMaxEntries, Math.max(1L, queryCacheTtlSeconds) * 1000L);
+        this.hnswMinItems = Math.max(1, hnswMinItems);
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.hnswEfSearch = hnswEfSearch;
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+        this.reloadDebounceMillis = Math.max(0L, reloadDebounceMillis);
+        this.memoryBudgetBytes = Math.max(0L, memoryBudgetMb) * 1024L * 1024L;
+        this.preload = preload == null ? "" : preload.trim();
     }
 
     @PostConstruct
     public void init() throws IOException {
-        kbItems.put("A", loadItems("kb/kbA.txt"));
-        kbItems.put("B", loadItems("kb/kbB.txt"));
-        kbItems.put("C", loadItems("kb/kbC.txt"));
+        if (openAiClient.isConfigured()) {
+            AtomicInteger threadIds = new AtomicInteger();
+            warmupExecutor = Executors.newFixedThreadPool(warmupThreads, runnable -> {
+                Thread thread = new Thread(runnable, "kb-warmup-" + threadIds.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
 
-        if (!openAiClient.isConfigured()) {
-            return;
+        Set<String> preloaded = "*".equals(preload)
+            ? tenantRegistry.tenantIds()
+            : new LinkedHashSet<>(Arrays.asList(preload.toUpperCase(Locale.ROOT).split("\\s*,\\s*")));
+        for (String tenant : preloaded) {
+            if (tenantRegistry.source(tenant).isPresent()) {
+                preloadsWarming.add(tenant);
+                snapshot(tenant);
+            }
         }
+        startWatcher();
+    }
 
-        for (String kb : kbItems.keySet()) {
-            Map<String, List<Double>> vectors = new HashMap<>();
-            for (KbItem item : kbItems.get(kb)) {
-                openAiClient.embed(buildEmbeddingText(item)).ifPresent(vector -> vectors.put(item.getId(), vector));
+    @PreDestroy
+    public void shutdown() {
+        if (warmupExecutor != null) {
+            warmupExecutor.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // The watcher thread is a daemon; nothing else to release.
             }
-            kbVectors.put(kb, vectors);
         }
     }
 
+    public String resolveTenant(String kb) {
+        return tenantRegistry.resolve(kb);
+    }
+
+    /**
+     * Company name of the tenant, taken from its {@code empresa} item; the tenant id otherwise.
+     */
+    public String displayName(String kb) {
+        return snapshot(kb).displayName();
+    }
+
     public List<KbItem> listItems(String kb) {
-        return kbItems.getOrDefault(normalizeKb(kb), List.of());
+        return snapshot(kb).items();
+    }
+
+    /**
+     * Current snapshot of the tenant {@code kb} resolves to. The first call for a tenant, or
+     * the first after it was evicted, parses its KB file on the calling thread and serves
+     * lexical search until the vectors are ready.
+     */
+    public KbSnapshot snapshot(String kb) {
+        String tenant = tenantRegistry.resolve(kb);
+        if (tenantRegistry.source(tenant).isEmpty()) {
+            return KbSnapshot.of(tenant, 0L, List.of(), InvertedIndex.empty(), VectorMatrix.empty());
+        }
+        TenantSlot slot = tenants.computeIfAbsent(tenant, TenantSlot::new);
+        slot.lastAccessNanos = System.nanoTime();
+        KbSnapshot snapshot = slot.snapshot;
+        return snapshot != null ? snapshot : load(slot);
+    }
+
+    /**
+     * Whether every tenant in {@code kb.tenants.preload} is loaded with its vectors published, or
+     * loaded and needing none (no embeddings API key, or no items). A tenant whose warm-up failed
+     * keeps this false. With no preload configured this is true from boot on purpose: nothing is
+     * warmed ahead, and tenants loaded on first use serve lexical search until their vectors arrive.
+     */
+    public boolean isWarmupDone() {
+        return preloadsWarming.isEmpty();
+    }
+
+    /**
+     * Re-reads the KB file of {@code tenant} (an exact tenant id) and publishes a new snapshot.
+     * Items are diffed by ID against the current snapshot, and only items whose embedding text
+     * is neither indexed nor in the embedding store are sent to the embeddings API. Searches
+     * keep using the previous snapshot until the new one is complete. Returns {@code null} when
+     * the tenant is not loaded, since its next use reads the file anyway.
+     */
+    public ReloadStats reload(String tenant) {
+        TenantSlot slot = tenants.get(tenant);
+        KbSnapshot previous = slot == null ? null : slot.snapshot;
+        if (previous == null) {
+            return null;
+        }
+        if (tenantRegistry.source(tenant).isEmpty()) {
+            slot.evict();
+            events.publishEvent(new TenantChangedEvent(tenant));
+            return null;
+        }
+
+        long start = System.nanoTime();
+        TenantContent content;
+        try {
+            content = readTenant(tenant);
+        } catch (IOException | UncheckedIOException e) {
+            ReloadStats failed = new ReloadStats(Instant.now(), elapsedMillis(start), 0, 0, 0, 0, e.getMessage());
+            slot.lastReload = failed;
+            return failed;
+        }
+
+        List<KbItem> items = content.items();
+        Map<String, String> before = textsById(previous.items());
+        Map<String, String> after = textsById(items);
+        int added = 0;
+        int changed = 0;
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String old = before.get(entry.getKey());
+            if (old == null) {
+                added++;
+            } else if (!old.equals(entry.getValue())) {
+                changed++;
+            }
+        }
+        int removed = (int) before.keySet().stream().filter(id -> !after.containsKey(id)).count();
+        if (added == 0 && changed == 0 && removed == 0 && items.size() == previous.items().size()) {
+            ReloadStats unchanged = new ReloadStats(Instant.now(), elapsedMillis(start), 0, 0, 0, 0, null);
+            slot.lastReload = unchanged;
+            return unchanged;
+        }
+
+        VectorIndex vectors = VectorMatrix.empty();
+        Map<String, float[]> embedded = new HashMap<>();
+        if (openAiClient.isConfigured()) {
+            vectors = indexVectors(tenant, items, keys -> knownVectors(tenant, previous.items(), previous.vectors()::vector, keys), embedded);
+        }
+
+        KbSnapshot next = KbSnapshot.of(tenant, versions.incrementAndGet(), items, content.lexical(), vectors);
+        ReloadStats stats = new ReloadStats(Instant.now(), elapsedMillis(start), added, changed, removed, embedded.size(), null);
+        slot.lastReload = stats;
+        if (slot.replace(next)) {
+            if (!vectors.isEmpty()) {
+                preloadsWarming.remove(tenant);
+            }
+            events.publishEvent(new TenantChangedEvent(tenant));
+            enforceBudget(slot);
+        }
+        return stats;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> loaded = new TreeMap<>();
+        long memoryBytes = 0;
+        for (TenantSlot slot : tenants.values()) {
+            loaded.put(slot.tenant, slot.toApiMap(tenantRegistry.source(slot.tenant).map(TenantRegistry.TenantSource::isExternal).orElse(false)));
+            memoryBytes += slot.sizeInBytes();
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isWarmupDone());
+        status.put("pendingWarmups", pendingWarmups.get());
+        status.put("simd", VectorMath.isSimdEnabled());
+        status.put("kbDirectory", tenantRegistry.directory() == null ? null : tenantRegistry.directory().toString());
+        status.put("watching", watchService != null);
+        status.put("discoveredTenants", tenantRegistry.tenantIds().size());
+        status.put("loadedTenants", tenants.values().stream().filter(TenantSlot::isLoaded).count());
+        status.put("memoryBytes", memoryBytes);
+        status.put("memoryBudgetBytes", memoryBudgetBytes);
+        status.put("evictions", evictions.get());
+        status.put("warmupFailures", warmupFailures.get());
+        status.put("tenants", loaded);
+        status.put("queryCache", queryEmbeddings.stats());
+        return status;
     }
 
     public List<SearchMatch> search(String kb, String query, int limit) {
-        List<KbItem> items = listItems(kb);
-        if (items.isEmpty()) {
+        KbSnapshot snapshot = snapshot(kb);
+        if (snapshot.items().isEmpty()) {
             return List.of();
         }
+        Optional<float[]> queryVector = snapshot.vectors().isEmpty() ? Optional.empty() : embedQuery(query);
+        return rank(snapshot, query, queryVector, limit);
+    }
 
-        Optional<List<Double>> queryVector = openAiClient.embed(query);
-        Map<String, List<Double>> vectors = kbVectors.getOrDefault(normalizeKb(kb), Map.of());
-        boolean vectorMode = queryVector.isPresent() && !vectors.isEmpty();
+    /**
+     * {@link #search} that does not block while the query is being embedded.
+     */
+    public CompletableFuture<List<SearchMatch>> searchAsync(String kb, String query, int limit) {
+        KbSnapshot snapshot = snapshot(kb);
+        if (snapshot.items().isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (snapshot.vectors().isEmpty()) {
+            return CompletableFuture.completedFuture(rank(snapshot, query, Optional.empty(), limit));
+        }
+        return embedQueryAsync(query).thenApply(queryVector -> rank(snapshot, query, queryVector, limit));
+    }
 
-        return items.stream()
-            .map(item -> {
-                double score;
-                if (vectorMode) {
-                    score = Optional.ofNullable(vectors.get(item.getId()))
-                        .map(iv -> cosineSimilarity(queryVector.get(), iv))
-                        .orElse(-1.0);
-                } else {
-                    score = lexicalScore(query, buildEmbeddingText(item));
-                }
-                return new SearchMatch(item, score);
-            })
-            .sorted(Comparator.comparingDouble(SearchMatch::score).reversed())
-            .limit(limit)
+    private List<SearchMatch> rank(KbSnapshot snapshot, String query, Optional<float[]> embedding, int limit) {
+        List<KbItem> items = snapshot.items();
+        VectorIndex vectors = snapshot.vectors();
+        float[] queryVector = embedding.map(vectors::prepareQuery).orElse(null);
+        if (queryVector != null) {
+            return vectors.search(queryVector, limit).stream()
+                .map(hit -> new SearchMatch(items.get(hit.row()), hit.score()))
+                .toList();
+        }
+
+        return snapshot.lexical().search(query, limit).stream()
+            .map(hit -> new SearchMatch(items.get(hit.row()), hit.score()))
             .toList();
     }
 
-    public KbItem findById(String kb, String id) {
-        return listItems(kb).stream()
-            .filter(item -> item.getId().equalsIgnoreCase(id))
-            .findFirst()
-            .orElse(null);
+    /**
+     * Embeds a user query, reusing the vector of any earlier query with the same normalized
+     * text and embedding model.
+     */
+    public Optional<float[]> embedQuery(String query) {
+        String key = queryKey(query);
+        if (key == null) {
+            return Optional.empty();
+        }
+        float[] cached = queryEmbeddings.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<float[]> vector = openAiClient.embed(query);
+        vector.ifPresent(value -> queryEmbeddings.put(key, value));
+        return vector;
     }
 
-    private String normalizeKb(String kb) {
-        if ("B".equalsIgnoreCase(kb)) {
-            return "B";
+    public CompletableFuture<Optional<float[]>> embedQueryAsync(String query) {
+        String key = queryKey(query);
+        if (key == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
-        if ("C".equalsIgnoreCase(kb)) {
-            return "C";
+        float[] cached = queryEmbeddings.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(cached));
         }
-        return "A";
+        return openAiClient.embedAsync(query).thenApply(vector -> {
+            vector.ifPresent(value -> queryEmbeddings.put(key, value));
+            return vector;
+        });
     }
 
-    private List<KbItem> loadItems(String classpathFile) throws IOException {
-        ClassPathResource resource = new ClassPathResource(classpathFile);
-        String text = new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-
-        List<KbItem> items = new ArrayList<>();
-        Map<String, String> fields = new HashMap<>();
+    private String queryKey(String query) {
+        String normalized = TextNormalizer.normalize(query);
+        return normalized.isBlank() ? null : openAiClient.getEmbeddingModel() + "::" + normalized;
+    }
 
-        for (String rawLine : text.split("\\r?\\n")) {
-            String line = rawLine.replace("\uFEFF", "").trim();
-            if (line.isEmpty()) {
-                continue;
+    private KbSnapshot load(TenantSlot slot) {
+        KbSnapshot snapshot;
+        TenantContent content;
+        slot.lock.lock();
+        try {
+            if (slot.snapshot != null) {
+                return slot.snapshot;
             }
-
-            if (line.startsWith("ID:") && !fields.isEmpty()) {
-                items.add(toItem(fields));
-                fields = new HashMap<>();
+            long start = System.nanoTime();
+            try {
+                content = readTenant(slot.tenant);
+                snapshot = KbSnapshot.of(slot.tenant, versions.incrementAndGet(), content.items(), content.lexical(), VectorMatrix.empty());
+            } catch (IOException | UncheckedIOException e) {
+                // Not cached, so the next request retries the file.
+                slot.lastError = e.getMessage();
+                return KbSnapshot.of(slot.tenant, 0L, List.of(), InvertedIndex.empty(), VectorMatrix.empty());
             }
+            slot.snapshot = snapshot;
+            slot.loads++;
+            slot.lastLoadMillis = elapsedMillis(start);
+            slot.lastError = null;
+            slot.compiled = content.compiled();
+        } finally {
+            slot.lock.unlock();
+        }
 
-            int separator = line.indexOf(':');
-            if (separator > 0) {
-                String key = line.substring(0, separator).trim().toUpperCase(Locale.ROOT);
-                String value = line.substring(separator + 1).trim();
-                fields.put(key, value);
-            }
+        scheduleVectors(slot, snapshot.items(), content.vectors());
+        enforceBudget(slot);
+        return snapshot;
+    }
+
+    private void scheduleVectors(TenantSlot slot, List<KbItem> items, List<float[]> compiledVectors) {
+        if (warmupExecutor == null || items.isEmpty()) {
+            preloadsWarming.remove(slot.tenant);
+            return;
+        }
+        pendingWarmups.incrementAndGet();
+        try {
+            CompletableFuture.runAsync(() -> warmUp(slot, items, compiledVectors), warmupExecutor)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        log.warn("Vector warm-up of tenant {} failed; it stays on lexical search", slot.tenant, cause);
+                        warmupFailed(slot, cause.toString());
+                    }
+                    pendingWarmups.decrementAndGet();
+                });
+        } catch (RejectedExecutionException e) {
+            pendingWarmups.decrementAndGet();
         }
+    }
 
-        if (!fields.isEmpty()) {
-            items.add(toItem(fields));
+    private void warmUp(TenantSlot slot, List<KbItem> items, List<float[]> compiledVectors) {
+        Map<String, float[]> embedded = new HashMap<>();
+        VectorIndex vectors = compiledVectors.isEmpty()
+            ? indexVectors(slot.tenant, items, keys -> embeddingStore.load(slot.tenant, keys), embedded)
+            : indexVectors(slot.tenant, items, keys -> knownVectors(slot.tenant, items, compiledVectors::get, keys), embedded);
+        int missing = items.size() - vectors.size();
+        if (missing > 0) {
+            // The embeddings API failed for these items; they are only found lexically.
+            log.warn("Vector warm-up of tenant {} left {} of {} items without an embedding", slot.tenant, missing, items.size());
+            warmupFailed(slot, missing + " of " + items.size() + " items have no embedding");
+        } else {
+            slot.lastWarmupError = null;
+        }
+        if (!vectors.isEmpty() && slot.publishVectors(items, vectors, versions.incrementAndGet())) {
+            preloadsWarming.remove(slot.tenant);
+            enforceBudget(slot);
         }
+    }
 
-        return items;
+    private void warmupFailed(TenantSlot slot, String error) {
+        slot.warmupFailures.incrementAndGet();
+        slot.lastWarmupError = error;
+        warmupFailures.incrementAndGet();
     }
 
-    private KbItem toItem(Map<String, String> fields) {
-        KbItem item = new KbItem();
-        item.setId(fields.getOrDefault("ID", "N/A"));
-        item.setTitle(fields.getOrDefault("TITLE", "Sin titulo"));
-        item.setType(fields.getOrDefault("TYPE", "servicio"));
-        item.setDescription(fields.getOrDefault("DESCRIPTION", ""));
-        item.setBenefits(fields.getOrDefault("BENEFITS", ""));
-        item.setUseCases(fields.getOrDefault("USE_CASES", ""));
-        item.setPrice(fields.getOrDefault("PRICE", "0 EUR"));
-        item.setNotes(fields.getOrDefault("NOTES", ""));
-        return item;
+    /**
+     * Builds the vector index for {@code items}. Vectors are looked up by embedding key through
+     * {@code known}; the rest are batch-embedded and also put in {@code embedded}. The tenant's
+     * embedding store is then rewritten to hold just these vectors.
+     */
+    private VectorIndex indexVectors(
+        String tenant,
+        List<KbItem> items,
+        Function<Set<String>, Map<String, float[]>> known,
+        Map<String, float[]> embedded
+    ) {
+        List<String> keys = new ArrayList<>(items.size());
+        Map<String, String> texts = new LinkedHashMap<>();
+        for (KbItem item : items) {
+            String text = KbText.embeddingText(item);
+            String key = embeddingStore.key(text);
+            keys.add(key);
+            texts.putIfAbsent(key, text);
+        }
+
+        Map<String, float[]> vectors = new HashMap<>(known.apply(texts.keySet()));
+        texts.keySet().removeAll(vectors.keySet());
+        List<String> missingKeys = new ArrayList<>(texts.keySet());
+        List<Optional<float[]>> results = openAiClient.embedBatch(new ArrayList<>(texts.values()));
+        for (int i = 0; i < missingKeys.size(); i++) {
+            String key = missingKeys.get(i);
+            results.get(i).ifPresent(vector -> {
+                vectors.put(key, vector);
+                embedded.put(key, vector);
+            });
+        }
+        embeddingStore.save(tenant, vectors);
+
+        VectorMatrix matrix = VectorMatrix.of(keys.stream().map(vectors::get).toList(), parallelThreshold);
+        // Small catalogs stay on exact scoring; large ones trade a little recall for sublinear search.
+        if (matrix.isEmpty() || matrix.size() < hnswMinItems) {
+            return matrix;
+        }
+        return HnswIndex.build(matrix, hnswM, hnswEfConstruction, hnswEfSearch);
     }
 
-    private String buildEmbeddingText(KbItem item) {
-        return String.join("\n",
-            item.getId(),
-            item.getTitle(),
-            item.getType(),
-            item.getDescription(),
-            item.getBenefits(),
-            item.getUseCases(),
-            item.getPrice(),
-            item.getNotes());
+    /**
+     * Vectors for {@code keys} taken by row from vectors already at hand for {@code items} (a
+     * snapshot being replaced, or a compiled KB snapshot), then from the embedding store.
+     */
+    private Map<String, float[]> knownVectors(String tenant, List<KbItem> items, IntFunction<float[]> vectorOfRow, Set<String> keys) {
+        Map<String, float[]> found = new HashMap<>();
+        for (int row = 0; row < items.size(); row++) {
+            String key = embeddingStore.key(KbText.embeddingText(items.get(row)));
+            if (keys.contains(key) && !found.containsKey(key)) {
+                float[] vector = vectorOfRow.apply(row);
+                if (vector != null) {
+                    found.put(key, vector);
+                }
+            }
+        }
+        Set<String> rest = new HashSet<>(keys);
+        rest.removeAll(found.keySet());
+        found.putAll(embeddingStore.load(tenant, rest));
+        return found;
     }
 
-    private double cosineSimilarity(List<Double> a, List<Double> b) {
-        if (a == null || b == null || a.isEmpty() || b.isEmpty() || a.size() != b.size()) {
-            return -1;
+    /**
+     * Evicts the least recently used tenants other than {@code keep} until the loaded
+     * snapshots fit in {@code kb.tenants.memory-budget-mb}.
+     */
+    private void enforceBudget(TenantSlot keep) {
+        if (memoryBudgetBytes <= 0) {
+            return;
         }
+        budgetLock.lock();
+        try {
+            long total = tenants.values().stream().mapToLong(TenantSlot::sizeInBytes).sum();
+            if (total <= memoryBudgetBytes) {
+                return;
+            }
+            List<TenantSlot> coldest = tenants.values().stream()
+                .filter(slot -> slot != keep && slot.isLoaded())
+                .sorted(Comparator.comparingLong(slot -> slot.lastAccessNanos))
+                .toList();
+            for (TenantSlot slot : coldest) {
+                if (total <= memoryBudgetBytes) {
+                    break;
+                }
+                long freed = slot.evict();
+                if (freed > 0) {
+                    total -= freed;
+                    evictions.incrementAndGet();
+                    events.publishEvent(new TenantChangedEvent(slot.tenant));
+                }
+            }
+        } finally {
+            budgetLock.unlock();
+        }
+    }
 
-        double dot = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        for (int i = 0; i < a.size(); i++) {
-            dot += a.get(i) * b.get(i);
-            normA += a.get(i) * a.get(i);
-            normB += b.get(i) * b.get(i);
+    private void startWatcher() throws IOException {
+        Path directory = tenantRegistry.directory();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
         }
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        Thread watcher = new Thread(this::watchKbDirectory, "kb-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
 
-        if (normA == 0.0 || normB == 0.0) {
-            return -1;
+    private void watchKbDirectory() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> changed = new LinkedHashSet<>();
+                // Editors and copies emit bursts of events per save; reload once the directory goes quiet.
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            changed.addAll(tenants.keySet());
+                        } else if (event.context() instanceof Path file) {
+                            tenantRegistry.tenantOf(file.getFileName().toString()).ifPresent(changed::add);
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(reloadDebounceMillis, TimeUnit.MILLISECONDS);
+                }
+                try {
+                    tenantRegistry.refresh();
+                } catch (IOException e) {
+                    // Keep the previous tenant list; loaded tenants still reload below.
+                }
+                changed.forEach(this::reload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed on shutdown.
         }
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
     }
 
-    private double lexicalScore(String query, String document) {
-        Set<String> q = tokenize(query);
-        Set<String> d = tokenize(document);
-        if (q.isEmpty() || d.isEmpty()) {
-            return 0.0;
+    /**
+     * Reads the tenant's precompiled KB snapshot when there is an up-to-date one. Otherwise
+     * streams the text file, indexing each item as it is parsed so the file is never held in
+     * memory as a whole.
+     */
+    private TenantContent readTenant(String tenant) throws IOException {
+        TenantRegistry.TenantSource source = tenantRegistry.source(tenant)
+            .orElseThrow(() -> new IOException("Unknown tenant " + tenant));
+        try {
+            Optional<ByteBuffer> buffer = source.openCompiled();
+            if (buffer.isPresent()) {
+                KbSnapshotFile.Compiled compiled = KbSnapshotFile.read(buffer.get());
+                List<float[]> vectors = compiled.embeddingModel().equals(openAiClient.getEmbeddingModel()) ? compiled.vectors() : List.of();
+                return new TenantContent(compiled.items(), compiled.lexical(), vectors, true);
+            }
+        } catch (IOException e) {
+            // A missing or damaged snapshot only costs parsing the text file.
         }
 
-        long overlap = q.stream().filter(d::contains).count();
-        return (double) overlap / Math.max(1, q.size());
+        List<KbItem> items = new ArrayList<>();
+        InvertedIndex.Builder lexical = InvertedIndex.builder(KbText::lexicalTokens);
+        try (InputStream in = source.open()) {
+            KbParser.parse(in, item -> {
+                items.add(item);
+                lexical.add(KbText.embeddingText(item));
+            });
+        }
+        return new TenantContent(List.copyOf(items), lexical.build(), List.of(), false);
     }
 
-    private Set<String> tokenize(String text) {
-        if (text == null || text.isBlank()) {
-            return Set.of();
+    private Map<String, String> textsById(List<KbItem> items) {
+        Map<String, String> texts = new LinkedHashMap<>();
+        for (KbItem item : items) {
+            texts.put(item.getId(), KbText.embeddingText(item));
         }
+        return texts;
+    }
 
-        return Arrays.stream(text.toLowerCase(Locale.ROOT)
-                .replaceAll("[^a-z0-9\\s]", " ")
-                .split("\\s+"))
-            .filter(token -> token.length() > 2)
-            .collect(Collectors.toCollection(HashSet::new));
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public KbItem findById(String kb, String id) {
+        return listItems(kb).stream()
+            .filter(item -> item.getId().equalsIgnoreCase(id))
+            .findFirst()
+            .orElse(null);
     }
 
     public record SearchMatch(KbItem item, double score) {
     }
+
+    /**
+     * Immutable view of one tenant's KB. A new snapshot is published whenever items or
+     * vectors change, so a search always sees a consistent pair.
+     */
+    public record KbSnapshot(
+        String tenant,
+        long version,
+        List<KbItem> items,
+        InvertedIndex lexical,
+        VectorIndex vectors,
+        String displayName,
+        long itemBytes
+    ) {
+
+        static KbSnapshot of(String tenant, long version, List<KbItem> items, InvertedIndex lexical, VectorIndex vectors) {
+            String displayName = items.stream()
+                .filter(item -> "empresa".equalsIgnoreCase(item.getType()) && item.getTitle() != null)
+                .map(item -> item.getTitle().replace(" - Perfil corporativo", "").trim())
+                .filter(title -> !title.isBlank())
+                .findFirst()
+                .orElse(tenant);
+            long itemBytes = 0;
+            for (KbItem item : items) {
+                // Item object plus eight String headers, UTF-16 text.
+                itemBytes += 8L * 40L + 32L + 2L * KbText.embeddingText(item).length();
+            }
+            return new KbSnapshot(tenant, version, items, lexical, vectors, displayName, itemBytes);
+        }
+
+        KbSnapshot withVectors(long version, VectorIndex vectors) {
+            return new KbSnapshot(tenant, version, items, lexical, vectors, displayName, itemBytes);
+        }
+
+        public long sizeInBytes() {
+            return itemBytes + lexical.sizeInBytes() + vectors.sizeInBytes();
+        }
+
+        public SearchMode mode() {
+            return vectors.isEmpty() ? SearchMode.LEXICAL : SearchMode.VECTOR;
+        }
+    }
+
+    /**
+     * Outcome of the last {@link #reload} of a tenant: item churn by ID, how many items had to
+     * be embedded again, and the error message when the file could not be read.
+     */
+    public record ReloadStats(
+        Instant at,
+        long durationMillis,
+        int added,
+        int changed,
+        int removed,
+        int reembedded,
+        String error
+    ) {
+    }
+
+    /**
+     * Published when a tenant's items were replaced by a reload or dropped by an eviction, so
+     * anything derived from them can be discarded.
+     */
+    public record TenantChangedEvent(String tenant) {
+    }
+
+    private record TenantContent(List<KbItem> items, InvertedIndex lexical, List<float[]> vectors, boolean compiled) {
+    }
+
+    public enum SearchMode {
+        LEXICAL,
+        VECTOR
+    }
+
+    /**
+     * Per-tenant holder that outlives evictions, so load statistics survive. The snapshot is
+     * {@code null} while the tenant is not loaded; writes happen under {@code lock}.
+     */
+    private static final class TenantSlot {
+        private final String tenant;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile KbSnapshot snapshot;
+        private volatile long lastAccessNanos = System.nanoTime();
+        private volatile int loads;
+        private volatile long lastLoadMillis;
+        private volatile String lastError;
+        private volatile ReloadStats lastReload;
+        private volatile boolean compiled;
+        private final AtomicInteger warmupFailures = new AtomicInteger();
+        private volatile String lastWarmupError;
+
+        private TenantSlot(String tenant) {
+            this.tenant = tenant;
+        }
+
+        private boolean isLoaded() {
+            return snapshot != null;
+        }
+
+        private long sizeInBytes() {
+            KbSnapshot current = snapshot;
+            return current == null ? 0L : current.sizeInBytes();
+        }
+
+        /**
+         * Adds vectors to the snapshot built from {@code items}, unless it was replaced or evicted meanwhile.
+         */
+        private boolean publishVectors(List<KbItem> items, VectorIndex vectors, long version) {
+            lock.lock();
+            try {
+                if (snapshot == null || snapshot.items() != items) {
+                    return false;
+                }
+                snapshot = snapshot.withVectors(version, vectors);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean replace(KbSnapshot next) {
+            lock.lock();
+            try {
+                if (snapshot == null) {
+                    return false;
+                }
+                snapshot = next;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long evict() {
+            lock.lock();
+            try {
+                long freed = sizeInBytes();
+                snapshot = null;
+                return freed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Map<String, Object> toApiMap(boolean external) {
+            KbSnapshot current = snapshot;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("loaded", current != null);
+            entry.put("source", external ? "directory" : "classpath");
+            entry.put("format", compiled ? "snapshot" : "text");
+            entry.put("loads", loads);
+            entry.put("lastLoadMillis", lastLoadMillis);
+            entry.put("idleSeconds", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - lastAccessNanos));
+            if (current != null) {
+                entry.put("mode", current.mode().name());
+                entry.put("version", current.version());
+                entry.put("items", current.items().size());
+                entry.put("lexicalTerms", current.lexical().terms());
+                entry.put("vectors", current.vectors().size());
+                entry.put("vectorIndex", current.vectors().kind());
+                entry.put("vectorBytes", current.vectors().sizeInBytes());
+                entry.put("memoryBytes", current.sizeInBytes());
+            }
+            entry.put("lastReload", lastReload);
+            entry.put("lastError", lastError);
+            entry.put("warmupFailures", warmupFailures.get());
+            entry.put("lastWarmupError", lastWarmupError);
+            return entry;
+        }
+    }
 }
@@ -3,91 +3,214 @@ package com.nebulasur.demomagic.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nebulasur.demomagic.dto.ChatMessage;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Component
 public class OpenAiClient {
 
-    private static final String OPENAI_API = "https://api.openai.com/v1";
-
+    private final String apiBase;
     private final HttpClient httpClient;
+    private final ExecutorService httpExecutor;
     private final ObjectMapper objectMapper;
     private final String apiKey;
     private final String chatModel;
     private final double chatTemperature;
     private final String embeddingModel;
+    private final int embeddingBatchSize;
+
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong streamFailures = new AtomicLong();
+    private final AtomicLong streamNanos = new AtomicLong();
+    private final AtomicLong firstTokens = new AtomicLong();
+    private final AtomicLong firstTokenNanos = new AtomicLong();
+    private final AtomicLong maxFirstTokenNanos = new AtomicLong();
 
     public OpenAiClient(
         ObjectMapper objectMapper,
         @Value("${OPENAI_API_KEY:}") String apiKey,
         @Value("${openai.chat.model:gpt-4o-mini}") String chatModel,
         @Value("${openai.chat.temperature:0}") double chatTemperature,
-        @Value("${openai.embedding.model:text-embedding-3-small}") String embeddingModel
+        @Value("${openai.embedding.model:text-embedding-3-small}") String embeddingModel,
+        @Value("${openai.embedding.batch-size:64}") int embeddingBatchSize,
+        @Value("${openai.base-url:https://api.openai.com/v1}") String apiBase,
+        @Value("${chat.virtual-threads:false}") boolean virtualThreads
     ) {
+        this.apiBase = apiBase.endsWith("/") ? apiBase.substring(0, apiBase.length() - 1) : apiBase;
         this.objectMapper = objectMapper;
         this.apiKey = apiKey;
         this.chatModel = chatModel;
         this.chatTemperature = Math.max(0.0, Math.min(2.0, chatTemperature));
         this.embeddingModel = embeddingModel;
-        this.httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(20))
-            .build();
+        this.embeddingBatchSize = Math.max(1, Math.min(2048, embeddingBatchSize));
+        // The client's default executor is a cached pool of platform threads that grows with the
+        // number of exchanges in flight; on virtual threads each exchange gets its own instead.
+        this.httpExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(20));
+        if (httpExecutor != null) {
+            builder.executor(httpExecutor);
+        }
+        this.httpClient = builder.build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    public String getEmbeddingModel() {
+        return embeddingModel;
     }
 
     public boolean isConfigured() {
         return apiKey != null && !apiKey.isBlank();
     }
 
-    public Optional<List<Double>> embed(String input) {
+    public Optional<float[]> embed(String input) {
         if (!isConfigured() || input == null || input.isBlank()) {
             return Optional.empty();
         }
+        return embedBatch(List.of(input)).get(0);
+    }
 
-        try {
-            String payload = objectMapper.createObjectNode()
-                .put("model", embeddingModel)
-                .put("input", input)
-                .toString();
-
-            HttpRequest request = HttpRequest.newBuilder(URI.create(OPENAI_API + "/embeddings"))
-                .timeout(Duration.ofSeconds(30))
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(payload))
-                .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() >= 300) {
-                return Optional.empty();
+    /**
+     * {@link #embed} without blocking the caller; the future never fails, it is empty instead.
+     */
+    public CompletableFuture<Optional<float[]>> embedAsync(String input) {
+        if (!isConfigured() || input == null || input.isBlank()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        List<String> batch = List.of(input);
+        return httpClient.sendAsync(embeddingRequest(batch), HttpResponse.BodyHandlers.ofString())
+            .thenApply(response -> {
+                try {
+                    List<float[]> vectors = parseEmbeddings(response, batch.size()).vectors();
+                    return vectors == null ? Optional.<float[]>empty() : Optional.ofNullable(vectors.get(0));
+                } catch (IOException e) {
+                    return Optional.<float[]>empty();
+                }
+            })
+            .exceptionally(error -> Optional.empty());
+    }
+
+    /**
+     * Embeds many inputs with as few {@code /embeddings} calls as possible. The result has one
+     * entry per input, in input order; blank inputs and inputs that could not be embedded are empty.
+     */
+    public List<Optional<float[]>> embedBatch(List<String> inputs) {
+        List<Optional<float[]>> results = new ArrayList<>(Collections.nCopies(inputs.size(), Optional.empty()));
+        if (!isConfigured() || inputs.isEmpty()) {
+            return results;
+        }
+
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            String input = inputs.get(i);
+            if (input != null && !input.isBlank()) {
+                pending.add(i);
             }
+        }
 
-            JsonNode root = objectMapper.readTree(response.body());
-            JsonNode vectorNode = root.path("data").path(0).path("embedding");
-            if (!vectorNode.isArray()) {
-                return Optional.empty();
+        for (int start = 0; start < pending.size(); start += embeddingBatchSize) {
+            embedChunk(inputs, pending.subList(start, Math.min(pending.size(), start + embeddingBatchSize)), results);
+        }
+        return results;
+    }
+
+    private void embedChunk(List<String> inputs, List<Integer> positions, List<Optional<float[]>> results) {
+        EmbeddingResponse response = requestEmbeddings(positions.stream().map(inputs::get).toList());
+        if (response.vectors() != null) {
+            for (int i = 0; i < positions.size(); i++) {
+                results.set(positions.get(i), Optional.ofNullable(response.vectors().get(i)));
             }
+            return;
+        }
 
-            List<Double> vector = new ArrayList<>();
-            vectorNode.forEach(value -> vector.add(value.asDouble()));
-            return Optional.of(vector);
+        // A rejected request (e.g. one input over the token limit) is bisected so the
+        // offending input does not take its whole chunk down; transport errors are not retried.
+        if (response.rejected() && positions.size() > 1) {
+            int middle = positions.size() / 2;
+            embedChunk(inputs, positions.subList(0, middle), results);
+            embedChunk(inputs, positions.subList(middle, positions.size()), results);
+        }
+    }
+
+    private EmbeddingResponse requestEmbeddings(List<String> batch) {
+        try {
+            HttpResponse<String> response = httpClient.send(embeddingRequest(batch), HttpResponse.BodyHandlers.ofString());
+            return parseEmbeddings(response, batch.size());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            return Optional.empty();
+            return new EmbeddingResponse(null, false);
         } catch (IOException e) {
-            return Optional.empty();
+            return new EmbeddingResponse(null, false);
+        }
+    }
+
+    private HttpRequest embeddingRequest(List<String> batch) {
+        ArrayNode inputNode = objectMapper.createArrayNode();
+        batch.forEach(inputNode::add);
+        JsonNode payload = objectMapper.createObjectNode()
+            .put("model", embeddingModel)
+            .set("input", inputNode);
+
+        return HttpRequest.newBuilder(URI.create(apiBase + "/embeddings"))
+            .timeout(Duration.ofSeconds(30 + batch.size() / 8))
+            .header("Authorization", "Bearer " + apiKey)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+            .build();
+    }
+
+    private EmbeddingResponse parseEmbeddings(HttpResponse<String> response, int batchSize) throws IOException {
+        if (response.statusCode() >= 300) {
+            return new EmbeddingResponse(null, response.statusCode() >= 400 && response.statusCode() < 500
+                && response.statusCode() != 401 && response.statusCode() != 429);
+        }
+
+        List<float[]> vectors = new ArrayList<>(Collections.nCopies(batchSize, null));
+        JsonNode data = objectMapper.readTree(response.body()).path("data");
+        for (int i = 0; i < data.size(); i++) {
+            JsonNode entry = data.get(i);
+            int index = entry.path("index").asInt(i);
+            JsonNode vectorNode = entry.path("embedding");
+            if (index < 0 || index >= batchSize || !vectorNode.isArray()) {
+                continue;
+            }
+            float[] vector = new float[vectorNode.size()];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = (float) vectorNode.get(d).asDouble();
+            }
+            vectors.set(index, vector);
         }
+        return new EmbeddingResponse(vectors, false);
     }
 
     public Optional<String> complete(String systemPrompt, String userPrompt) {
@@ -102,55 +225,172 @@ public class OpenAiClient {
         }
 
         try {
-            ArrayNode messagesNode = objectMapper.createArrayNode()
-                .add(objectMapper.createObjectNode()
-                    .put("role", "system")
-                    .put("content", systemPrompt == null ? "" : systemPrompt));
-
-            if (messages != null) {
-                for (ChatMessage chatMessage : messages) {
-                    if (chatMessage == null) {
+            return parseCompletion(httpClient.send(completionRequest(systemPrompt, messages, false), HttpResponse.BodyHandlers.ofString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    public CompletableFuture<Optional<String>> completeAsync(String systemPrompt, String userPrompt) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage("user", userPrompt));
+        return completeAsync(systemPrompt, messages);
+    }
+
+    /**
+     * {@link #complete} on {@link HttpClient#sendAsync}: no thread waits while the model is
+     * generating. The future never fails; errors surface as an empty result, as in {@code complete}.
+     */
+    public CompletableFuture<Optional<String>> completeAsync(String systemPrompt, List<ChatMessage> messages) {
+        if (!isConfigured()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return httpClient.sendAsync(completionRequest(systemPrompt, messages, false), HttpResponse.BodyHandlers.ofString())
+            .thenApply(response -> {
+                try {
+                    return parseCompletion(response);
+                } catch (IOException e) {
+                    return Optional.<String>empty();
+                }
+            })
+            .exceptionally(error -> Optional.empty());
+    }
+
+    private Optional<String> parseCompletion(HttpResponse<String> response) throws IOException {
+        if (response.statusCode() >= 300) {
+            return Optional.empty();
+        }
+        JsonNode root = objectMapper.readTree(response.body());
+        String content = root.path("choices").path(0).path("message").path("content").asText();
+        if (content == null || content.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(content.trim());
+    }
+
+    public Optional<String> completeStream(String systemPrompt, String userPrompt, Consumer<String> onToken) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage("user", userPrompt));
+        return completeStream(systemPrompt, messages, onToken);
+    }
+
+    /**
+     * Streams a completion with {@code stream=true}, handing each content delta to
+     * {@code onToken} as soon as its chunk is parsed, and returns the whole text. Empty when
+     * nothing was generated; tokens already handed over stay delivered. An
+     * {@link UncheckedIOException} from {@code onToken}, such as a client that went away, ends the
+     * stream like a transport error does: the upstream connection is closed and the text so far
+     * is returned.
+     */
+    public Optional<String> completeStream(String systemPrompt, List<ChatMessage> messages, Consumer<String> onToken) {
+        if (!isConfigured()) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        streams.incrementAndGet();
+        StringBuilder content = new StringBuilder();
+        boolean firstToken = true;
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(completionRequest(systemPrompt, messages, true), HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() >= 300) {
+                    streamFailures.incrementAndGet();
+                    return Optional.empty();
+                }
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    if (!line.startsWith("data:")) {
                         continue;
                     }
-                    String content = chatMessage.getContent() == null ? "" : chatMessage.getContent().trim();
-                    if (content.isBlank()) {
+                    String data = line.substring(5).trim();
+                    if ("[DONE]".equals(data)) {
+                        break;
+                    }
+                    String delta = objectMapper.readTree(data).path("choices").path(0).path("delta").path("content").asText("");
+                    if (delta.isEmpty()) {
                         continue;
                     }
-                    messagesNode.add(objectMapper.createObjectNode()
-                        .put("role", normalizeRole(chatMessage.getRole()))
-                        .put("content", content));
+                    if (firstToken) {
+                        recordFirstToken(System.nanoTime() - start);
+                        firstToken = false;
+                    }
+                    content.append(delta);
+                    onToken.accept(delta);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            streamFailures.incrementAndGet();
+        } catch (IOException | UncheckedIOException e) {
+            streamFailures.incrementAndGet();
+        } finally {
+            streamNanos.addAndGet(System.nanoTime() - start);
+        }
+        String text = content.toString().trim();
+        return text.isBlank() ? Optional.empty() : Optional.of(text);
+    }
 
-            JsonNode payload = objectMapper.createObjectNode()
-                .put("model", chatModel)
-                .put("temperature", chatTemperature)
-                .set("messages", messagesNode);
-
-            HttpRequest request = HttpRequest.newBuilder(URI.create(OPENAI_API + "/chat/completions"))
-                .timeout(Duration.ofSeconds(40))
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
-                .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() >= 300) {
-                return Optional.empty();
-            }
+    /**
+     * Time to first token and total duration of streamed completions.
+     */
+    public Map<String, Object> streamingStats() {
+        long streamCount = streams.get();
+        long firstTokenCount = firstTokens.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("streams", streamCount);
+        stats.put("failures", streamFailures.get());
+        stats.put("averageTimeToFirstTokenMillis", firstTokenCount == 0 ? 0.0 : firstTokenNanos.get() / 1_000_000.0 / firstTokenCount);
+        stats.put("maxTimeToFirstTokenMillis", maxFirstTokenNanos.get() / 1_000_000.0);
+        stats.put("averageStreamMillis", streamCount == 0 ? 0.0 : streamNanos.get() / 1_000_000.0 / streamCount);
+        return stats;
+    }
+
+    private void recordFirstToken(long nanos) {
+        firstTokens.incrementAndGet();
+        firstTokenNanos.addAndGet(nanos);
+        maxFirstTokenNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private HttpRequest completionRequest(String systemPrompt, List<ChatMessage> messages, boolean stream) {
+        ArrayNode messagesNode = objectMapper.createArrayNode()
+            .add(objectMapper.createObjectNode()
+                .put("role", "system")
+                .put("content", systemPrompt == null ? "" : systemPrompt));
 
-            JsonNode root = objectMapper.readTree(response.body());
-            String content = root.path("choices").path(0).path("message").path("content").asText();
-            if (content == null || content.isBlank()) {
-                return Optional.empty();
+        if (messages != null) {
+            for (ChatMessage chatMessage : messages) {
+                if (chatMessage == null) {
+                    continue;
+                }
+                String content = chatMessage.getContent() == null ? "" : chatMessage.getContent().trim();
+                if (content.isBlank()) {
+                    continue;
+                }
+                messagesNode.add(objectMapper.createObjectNode()
+                    .put("role", normalizeRole(chatMessage.getRole()))
+                    .put("content", content));
             }
-            return Optional.of(content.trim());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return Optional.empty();
-        } catch (IOException e) {
-            return Optional.empty();
         }
+
+        ObjectNode payload = objectMapper.createObjectNode()
+            .put("model", chatModel)
+            .put("temperature", chatTemperature);
+        if (stream) {
+            payload.put("stream", true);
+        }
+        payload.set("messages", messagesNode);
+
+        return HttpRequest.newBuilder(URI.create(apiBase + "/chat/completions"))
+            .timeout(Duration.ofSeconds(40))
+            .header("Authorization", "Bearer " + apiKey)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+            .build();
     }
 
     private String normalizeRole(String role) {
@@ -162,4 +402,7 @@ public class OpenAiClient {
         }
         return "user";
     }
+
+    private record EmbeddingResponse(List<float[]> vectors, boolean rejected) {
+    }
 }
@@ -0,0 +1,153 @@
+package com.nebulasur.demomagic.service;
+
+import com.nebulasur.demomagic.kb.KbSnapshotFile;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Catalog of the tenants this node can serve: one per {@code kb<ID>.txt} found under
+ * {@code classpath*:kb/} or in the optional external KB directory, which wins when both define
+ * the same ID. Discovery only lists files; {@link KnowledgeBaseService} loads them on demand.
+ */
+@Component
+public class TenantRegistry {
+
+    private static final Pattern KB_FILE = Pattern.compile("kb([A-Za-z0-9_-]+)\\.txt");
+
+    private final Path kbDirectory;
+    private final String defaultTenant;
+    private volatile Map<String, TenantSource> sources = Map.of();
+
+    public TenantRegistry(
+        @Value("${kb.directory:}") String kbDirectory,
+        @Value("${kb.default-tenant:A}") String defaultTenant
+    ) {
+        this.kbDirectory = kbDirectory == null || kbDirectory.isBlank() ? null : Paths.get(kbDirectory.trim());
+        this.defaultTenant = defaultTenant == null || defaultTenant.isBlank() ? "A" : defaultTenant.trim().toUpperCase(Locale.ROOT);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        refresh();
+    }
+
+    /**
+     * Re-scans the classpath and the external directory. Called when the directory changes.
+     */
+    public void refresh() throws IOException {
+        Map<String, TenantSource> found = new TreeMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath*:kb/kb*.txt")) {
+            tenantOf(resource.getFilename()).ifPresent(tenant -> found.putIfAbsent(tenant, new TenantSource(tenant, resource, null)));
+        }
+        if (kbDirectory != null && Files.isDirectory(kbDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(kbDirectory, "kb*.txt")) {
+                for (Path file : files) {
+                    tenantOf(file.getFileName().toString()).ifPresent(tenant -> found.put(tenant, new TenantSource(tenant, null, file)));
+                }
+            }
+        }
+        sources = Collections.unmodifiableMap(found);
+    }
+
+    public Path directory() {
+        return kbDirectory;
+    }
+
+    public Set<String> tenantIds() {
+        return sources.keySet();
+    }
+
+    public Optional<TenantSource> source(String tenant) {
+        return Optional.ofNullable(sources.get(tenant));
+    }
+
+    /**
+     * Maps a requested tenant or KB id to a known tenant, case-insensitively. Unknown or missing
+     * ids fall back to {@code kb.default-tenant}.
+     */
+    public String resolve(String requested) {
+        String tenant = requested == null ? "" : requested.trim().toUpperCase(Locale.ROOT);
+        return sources.containsKey(tenant) ? tenant : defaultTenant;
+    }
+
+    /**
+     * Tenant id encoded in a KB file name such as {@code kbA.txt}, whether or not it is known yet.
+     */
+    public Optional<String> tenantOf(String fileName) {
+        Matcher matcher = KB_FILE.matcher(fileName == null ? "" : fileName);
+        return matcher.matches() ? Optional.of(matcher.group(1).toUpperCase(Locale.ROOT)) : Optional.empty();
+    }
+
+    public record TenantSource(String tenant, Resource resource, Path file) {
+
+        public boolean isExternal() {
+            return file != null;
+        }
+
+        public InputStream open() throws IOException {
+            return file != null ? Files.newInputStream(file) : resource.getInputStream();
+        }
+
+        /**
+         * The precompiled {@code kb<ID>.snap} next to the text file, memory-mapped when it is a
+         * plain file and read into the heap when it is packaged in a jar. Empty when there is
+         * none or it is older than the text file.
+         */
+        public Optional<ByteBuffer> openCompiled() throws IOException {
+            String textName = file != null ? file.getFileName().toString() : resource.getFilename();
+            if (textName == null || !textName.endsWith(".txt")) {
+                return Optional.empty();
+            }
+            String name = textName.substring(0, textName.length() - ".txt".length()) + KbSnapshotFile.EXTENSION;
+
+            if (file != null) {
+                Path compiled = file.resolveSibling(name);
+                if (!Files.isRegularFile(compiled) || Files.getLastModifiedTime(compiled).compareTo(Files.getLastModifiedTime(file)) < 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(map(compiled));
+            }
+
+            Resource compiled = resource.createRelative(name);
+            if (!compiled.exists()) {
+                return Optional.empty();
+            }
+            if (compiled.isFile()) {
+                if (resource.isFile() && compiled.lastModified() < resource.lastModified()) {
+                    return Optional.empty();
+                }
+                return Optional.of(map(compiled.getFile().toPath()));
+            }
+            try (InputStream in = compiled.getInputStream()) {
+                return Optional.of(ByteBuffer.wrap(in.readAllBytes()));
+            }
+        }
+
+        private static ByteBuffer map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.nebulasur.demomagic.session;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Where one chat session is inside a guided flow and the answers collected so far. Answers
+ * live in an array indexed by {@link Slot}, and the whole state encodes to a compact binary
+ * record for a {@link SessionStore}. The record stores enum ordinals, so reordering
+ * {@link Flow} or {@link Slot} requires bumping {@link #FORMAT_VERSION}.
+ */
+public final class ConversationState {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final Flow[] FLOWS = Flow.values();
+    private static final Slot[] SLOTS = Slot.values();
+
+    private String tenant;
+    private String lang;
+    private Flow flow = Flow.NONE;
+    private final String[] slots = new String[SLOTS.length];
+    private boolean dirty;
+
+    public ConversationState(String tenant, String lang) {
+        this.tenant = tenant;
+        this.lang = lang;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public Flow getFlow() {
+        return flow;
+    }
+
+    public void setFlow(Flow flow) {
+        this.flow = flow;
+        dirty = true;
+    }
+
+    public void put(Slot slot, String value) {
+        slots[slot.ordinal()] = value == null ? "" : value.trim();
+        dirty = true;
+    }
+
+    public String get(Slot slot) {
+        String value = slots[slot.ordinal()];
+        return value == null ? "" : value;
+    }
+
+    public void clear() {
+        flow = Flow.NONE;
+        Arrays.fill(slots, null);
+        dirty = true;
+    }
+
+    public void reset(String tenant, String lang) {
+        this.tenant = tenant;
+        this.lang = lang;
+        clear();
+    }
+
+    /**
+     * Whether the state changed since it was created or decoded, and so needs saving.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Version, tenant, language, flow ordinal, then one (slot ordinal, value) pair per filled slot.
+     */
+    public byte[] toBytes() {
+        byte[] tenantBytes = bytes(tenant);
+        byte[] langBytes = bytes(lang);
+        byte[][] values = new byte[slots.length][];
+        int size = 1 + 2 + tenantBytes.length + 2 + langBytes.length + 1 + 1;
+        int filled = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                values[i] = bytes(slots[i]);
+                size += 1 + 4 + values[i].length;
+                filled++;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(FORMAT_VERSION);
+        out.putShort((short) tenantBytes.length).put(tenantBytes);
+        out.putShort((short) langBytes.length).put(langBytes);
+        out.put((byte) flow.ordinal());
+        out.put((byte) filled);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                out.put((byte) i).putInt(values[i].length).put(values[i]);
+            }
+        }
+        return out.array();
+    }
+
+    /**
+     * Decodes {@link #toBytes}; empty when the record is from another format version or damaged.
+     */
+    public static Optional<ConversationState> fromBytes(byte[] record) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(record);
+            if (in.get() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            ConversationState state = new ConversationState(readString(in, in.getShort() & 0xFFFF), readString(in, in.getShort() & 0xFFFF));
+            state.flow = FLOWS[in.get()];
+            int filled = in.get();
+            for (int i = 0; i < filled; i++) {
+                int slot = in.get();
+                state.slots[slot] = readString(in, in.getInt());
+            }
+            return Optional.of(state);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public enum Flow {
+        NONE,
+        CITA_MOTIVO,
+        CITA_FECHA,
+        CITA_HORA,
+        CITA_MODALIDAD,
+        CITA_CONTACTO,
+        PROPIEDAD_ZONA,
+        PROPIEDAD_PRESUPUESTO,
+        PROPIEDAD_HABITACIONES,
+        PROPIEDAD_TIPO,
+        PROPIEDAD_OBJETIVO,
+        CARRITO_DATOS_VEHICULO
+    }
+
+    /**
+     * Answers a flow can collect.
+     */
+    public enum Slot {
+        CITA_MOTIVO,
+        CITA_FECHA,
+        CITA_HORA,
+        CITA_MODALIDAD,
+        CITA_CONTACTO,
+        PROP_ZONA,
+        PROP_PRESUPUESTO,
+        PROP_HABITACIONES,
+        PROP_TIPO,
+        PROP_OBJETIVO,
+        CART_ITEM_ID
+    }
+}
@@ -0,0 +1,97 @@
+package com.nebulasur.demomagic.session;
+
+import com.nebulasur.demomagic.cache.SessionCache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sessions in this instance's heap, bounded by a {@link SessionCache}. With a
+ * {@link MappedSessionFile} every save is also written through to the file, and a session
+ * missing from memory is restored from it on first use, so a restart keeps in-progress flows.
+ */
+public final class InMemorySessionStore implements SessionStore {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 96L;
+
+    private final SessionCache<String, Versioned> sessions;
+    private final MappedSessionFile file;
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong fileErrors = new AtomicLong();
+
+    public InMemorySessionStore(int maxEntries, long maxBytes, long idleTtlMillis, MappedSessionFile file) {
+        this.sessions = new SessionCache<>(maxEntries, maxBytes, idleTtlMillis, entry -> ENTRY_OVERHEAD_BYTES + entry.record().length);
+        this.file = file;
+    }
+
+    @Override
+    public Optional<Versioned> load(String key) {
+        return Optional.ofNullable(sessions.compute(key, current -> current != null ? current : restore(key)));
+    }
+
+    @Override
+    public boolean save(String key, byte[] record, long expectedVersion) {
+        boolean[] saved = new boolean[1];
+        sessions.compute(key, current -> {
+            long version = current == null ? 0L : current.version();
+            if (version != expectedVersion) {
+                return current;
+            }
+            saved[0] = true;
+            writeThrough(key, record);
+            return new Versioned(record, version + 1);
+        });
+        if (!saved[0]) {
+            conflicts.incrementAndGet();
+        }
+        return saved[0];
+    }
+
+    /**
+     * Drops every session idle for longer than the TTL and returns how many there were.
+     */
+    public int sweep() {
+        return sessions.sweep();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = sessions.stats();
+        stats.put("store", "memory");
+        stats.put("conflicts", conflicts.get());
+        if (file != null) {
+            Map<String, Object> fileStats = file.stats();
+            fileStats.put("writeErrors", fileErrors.get());
+            stats.put("file", fileStats);
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private Versioned restore(String key) {
+        return file == null ? null : file.read(key).map(record -> new Versioned(record, 1L)).orElse(null);
+    }
+
+    /**
+     * A failed write only costs the session its progress on the next restart, so it is counted
+     * rather than failing the save.
+     */
+    private void writeThrough(String key, byte[] record) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(key, record);
+        } catch (IOException e) {
+            fileErrors.incrementAndGet();
+        }
+    }
+}
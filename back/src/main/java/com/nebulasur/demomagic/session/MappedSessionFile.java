@@ -0,0 +1,255 @@
+package com.nebulasur.demomagic.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only, memory-mapped file of session records keyed by string. Writing a key appends
+ * a new record and leaves the previous one as garbage; when the mapping fills up, live records
+ * are slid down over the garbage in place and the mapping only grows if that did not free
+ * enough room. Writes land in the page cache, so they survive a restart of the process
+ * without an explicit flush.
+ *
+ * <p>Opening the file scans record headers only, to find the latest offset of each key;
+ * payloads are copied out the first time a key is read. Records older than the idle TTL are
+ * treated as absent and dropped at the next compaction.
+ *
+ * <p>Layout: magic and format version, then records of {@code int length} (of what follows),
+ * {@code short} key length, UTF-8 key, {@code long} write time in epoch milliseconds and the
+ * payload; an empty payload deletes the key. A zero length ends the data. A record's length is
+ * written last, after the terminator behind it, so a write torn by a crash is never read.
+ */
+public final class MappedSessionFile implements Closeable {
+
+    private static final int MAGIC = 0x53455353;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Short.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final long idleMillis;
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Integer> offsets = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int end;
+    private long liveBytes;
+
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    public MappedSessionFile(Path path, long idleTtlMillis) throws IOException {
+        this.path = path;
+        this.idleMillis = Math.max(1L, idleTtlMillis);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, Math.min(size, Integer.MAX_VALUE)));
+        if (size >= HEADER_BYTES && buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION) {
+            scan();
+        } else {
+            // New, foreign or older-format file: sessions are soft state, start empty.
+            buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(HEADER_BYTES, 0);
+            end = HEADER_BYTES;
+        }
+    }
+
+    /**
+     * The latest payload written for the key, unless it was deleted or has been idle for longer
+     * than the TTL.
+     */
+    public Optional<byte[]> read(String key) {
+        lock.lock();
+        try {
+            Integer offset = offsets.get(key);
+            if (offset == null) {
+                return Optional.empty();
+            }
+            int keyLength = buffer.getShort(offset + Integer.BYTES) & 0xFFFF;
+            int stampAt = offset + Integer.BYTES + Short.BYTES + keyLength;
+            if (System.currentTimeMillis() - buffer.getLong(stampAt) > idleMillis) {
+                offsets.remove(key);
+                liveBytes -= recordSize(offset);
+                return Optional.empty();
+            }
+            byte[] payload = new byte[offset + recordSize(offset) - stampAt - Long.BYTES];
+            buffer.get(stampAt + Long.BYTES, payload);
+            restored.incrementAndGet();
+            return Optional.of(payload);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void write(String key, byte[] payload) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Session key too long");
+        }
+        int size = RECORD_OVERHEAD + keyBytes.length + payload.length;
+        lock.lock();
+        try {
+            ensureRoom(size + Integer.BYTES);
+            int at = end;
+            buffer.putShort(at + Integer.BYTES, (short) keyBytes.length);
+            buffer.put(at + Integer.BYTES + Short.BYTES, keyBytes);
+            buffer.putLong(at + Integer.BYTES + Short.BYTES + keyBytes.length, System.currentTimeMillis());
+            buffer.put(at + Integer.BYTES + Short.BYTES + keyBytes.length + Long.BYTES, payload);
+            buffer.putInt(at + size, 0);
+            buffer.putInt(at, size - Integer.BYTES);
+            end = at + size;
+
+            Integer previous = payload.length == 0 ? offsets.remove(key) : offsets.put(key, at);
+            if (previous != null) {
+                liveBytes -= recordSize(previous);
+            }
+            if (payload.length > 0) {
+                liveBytes += size;
+            }
+            writes.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void delete(String key) throws IOException {
+        lock.lock();
+        try {
+            if (offsets.containsKey(key)) {
+                write(key, new byte[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("path", path.toString());
+            stats.put("records", offsets.size());
+            stats.put("mappedBytes", buffer.capacity());
+            stats.put("usedBytes", end);
+            stats.put("liveBytes", liveBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("restored", restored.get());
+        stats.put("writes", writes.get());
+        stats.put("compactions", compactions.get());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scan() {
+        int position = HEADER_BYTES;
+        int capacity = buffer.capacity();
+        while (position + Integer.BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD - Integer.BYTES || position + Integer.BYTES + length > capacity) {
+                break;
+            }
+            int keyLength = buffer.getShort(position + Integer.BYTES) & 0xFFFF;
+            if (Short.BYTES + keyLength + Long.BYTES > length) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(position + Integer.BYTES + Short.BYTES, keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            int size = Integer.BYTES + length;
+            boolean deleted = size == RECORD_OVERHEAD + keyLength;
+            Integer previous = deleted ? offsets.remove(key) : offsets.put(key, position);
+            if (previous != null) {
+                liveBytes -= recordSize(previous);
+            }
+            if (!deleted) {
+                liveBytes += size;
+            }
+            position += size;
+        }
+        end = position;
+    }
+
+    private void ensureRoom(int needed) throws IOException {
+        if ((long) end + needed <= buffer.capacity()) {
+            return;
+        }
+        // Compact only when that leaves the mapping at most half full; otherwise grow and let
+        // garbage accumulate until the next time it fills up.
+        if (HEADER_BYTES + liveBytes + needed <= buffer.capacity() / 2) {
+            compact();
+            return;
+        }
+        long capacity = Math.max(2L * buffer.capacity(), 2L * ((long) end + needed));
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Session file is full");
+        }
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Moves the live, unexpired records to the front in file order. Each record only ever
+     * moves towards the start, so a single forward pass never overwrites one still to be moved.
+     */
+    private void compact() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        List<Map.Entry<String, Integer>> live = new ArrayList<>(offsets.entrySet());
+        live.sort(Map.Entry.comparingByValue());
+        offsets.clear();
+        int cursor = HEADER_BYTES;
+        for (Map.Entry<String, Integer> entry : live) {
+            int offset = entry.getValue();
+            int keyLength = buffer.getShort(offset + Integer.BYTES) & 0xFFFF;
+            if (buffer.getLong(offset + Integer.BYTES + Short.BYTES + keyLength) < cutoff) {
+                continue;
+            }
+            int size = recordSize(offset);
+            if (offset != cursor) {
+                byte[] record = new byte[size];
+                buffer.get(offset, record);
+                buffer.put(cursor, record);
+            }
+            offsets.put(entry.getKey(), cursor);
+            cursor += size;
+        }
+        buffer.putInt(cursor, 0);
+        end = cursor;
+        liveBytes = cursor - HEADER_BYTES;
+        compactions.incrementAndGet();
+    }
+
+    private int recordSize(int offset) {
+        return Integer.BYTES + buffer.getInt(offset);
+    }
+}
@@ -0,0 +1,125 @@
+package com.nebulasur.demomagic.session;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sessions in an external key-value service shared by every backend instance, spoken to over
+ * plain HTTP with entity tags as versions:
+ *
+ * <ul>
+ *   <li>{@code GET {base}/{key}} answers 200 with the record and {@code ETag: "<version>"},
+ *   or 404 when the session does not exist or has expired.</li>
+ *   <li>{@code PUT {base}/{key}} with {@code If-Match: "<version>"}, or {@code If-None-Match: *}
+ *   to create, stores the record and answers 2xx, or 412 when the version no longer matches.
+ *   {@code Session-Ttl-Seconds} tells the service when to expire the session.</li>
+ * </ul>
+ *
+ * <p>Keys are URL-encoded into a single path segment.
+ */
+public final class RemoteSessionStore implements SessionStore {
+
+    private final String baseUrl;
+    private final Duration timeout;
+    private final long ttlSeconds;
+    private final HttpClient httpClient;
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public RemoteSessionStore(String baseUrl, Duration timeout, long idleTtlMillis) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.timeout = timeout;
+        this.ttlSeconds = Math.max(1L, idleTtlMillis / 1000L);
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(timeout)
+            .build();
+    }
+
+    @Override
+    public Optional<Versioned> load(String key) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(uri(key))
+            .timeout(timeout)
+            .GET()
+            .build();
+        HttpResponse<byte[]> response = send(request);
+        loads.incrementAndGet();
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Session store answered " + response.statusCode() + " to GET");
+        }
+        String etag = response.headers().firstValue("ETag").orElse("");
+        return Optional.of(new Versioned(response.body(), parseVersion(etag)));
+    }
+
+    @Override
+    public boolean save(String key, byte[] record, long expectedVersion) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri(key))
+            .timeout(timeout)
+            .header("Content-Type", "application/octet-stream")
+            .header("Session-Ttl-Seconds", Long.toString(ttlSeconds))
+            .PUT(HttpRequest.BodyPublishers.ofByteArray(record));
+        if (expectedVersion == 0L) {
+            builder.header("If-None-Match", "*");
+        } else {
+            builder.header("If-Match", "\"" + expectedVersion + "\"");
+        }
+        HttpResponse<byte[]> response = send(builder.build());
+        if (response.statusCode() == 412) {
+            conflicts.incrementAndGet();
+            return false;
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Session store answered " + response.statusCode() + " to PUT");
+        }
+        saves.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("store", "remote");
+        stats.put("url", baseUrl);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("loads", loads.get());
+        stats.put("saves", saves.get());
+        stats.put("conflicts", conflicts.get());
+        return stats;
+    }
+
+    private URI uri(String key) {
+        return URI.create(baseUrl + "/" + URLEncoder.encode(key, StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling the session store", e);
+        }
+    }
+
+    private static long parseVersion(String etag) throws IOException {
+        String value = etag.startsWith("W/") ? etag.substring(2) : etag;
+        try {
+            return Long.parseLong(value.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Session store sent an unusable ETag: " + etag);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.nebulasur.demomagic.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Where chat sessions live between requests. Sessions are stored as encoded
+ * {@link ConversationState} records with a version that every successful save increments, so
+ * instances sharing a store detect a concurrent update instead of overwriting it.
+ */
+public interface SessionStore extends Closeable {
+
+    /**
+     * The latest record for the key, empty when the session does not exist or has expired.
+     */
+    Optional<Versioned> load(String key) throws IOException;
+
+    /**
+     * Stores the record if the session is still at {@code expectedVersion}, where 0 means it
+     * must not exist yet. Returns false, storing nothing, when another writer got there first.
+     */
+    boolean save(String key, byte[] record, long expectedVersion) throws IOException;
+
+    Map<String, Object> stats();
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    record Versioned(byte[] record, long version) {
+    }
+}
@@ -0,0 +1,154 @@
+package com.nebulasur.demomagic.text;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Accent-folding normalizer used for every keyword, cache key and index term: NFD with the
+ * combining marks removed, lower-cased, every character other than {@code [a-z0-9]} turned
+ * into a space, runs of spaces collapsed and the result trimmed.
+ *
+ * <p>The whole pipeline is folded per BMP character into a lookup table, so a call is a single
+ * pass into a per-thread buffer (a fresh one on virtual threads). ASCII entries are filled up
+ * front and the rest the first time they are seen. Surrogates and the few characters that fold
+ * into more than one character take the regex path, which defines the expected output.
+ */
+public final class TextNormalizer {
+
+    private static final char DROP = '\0';
+    private static final char COMPLEX = '\1';
+    private static final char UNKNOWN = '\2';
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9\\s]");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final char[] FOLD = buildTable();
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    private TextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        int length = text.length();
+        char[] out = buffer(length);
+        int size = 0;
+        boolean pendingSpace = false;
+        boolean changed = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            char folded = FOLD[c];
+            if (folded == UNKNOWN) {
+                // Racy but harmless: every thread computes the same entry.
+                folded = FOLD[c] = classify(foldCharacter(c));
+            }
+            if (folded == COMPLEX) {
+                return foldSlowly(text);
+            }
+            changed |= folded != c;
+            if (folded == ' ') {
+                pendingSpace = size > 0;
+            } else if (folded != DROP) {
+                if (pendingSpace) {
+                    out[size++] = ' ';
+                    pendingSpace = false;
+                }
+                out[size++] = folded;
+            }
+        }
+        // Same length means nothing was dropped, collapsed or trimmed.
+        return size == length && !changed ? text : new String(out, 0, size);
+    }
+
+    private static char[] buffer(int length) {
+        // Virtual threads are not pooled, so a per-thread buffer would be allocated per request
+        // and kept alive by every one of them that is parked.
+        if (length > MAX_RETAINED_BUFFER || Thread.currentThread().isVirtual()) {
+            return new char[length];
+        }
+        char[] buffer = BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static String foldSlowly(String text) {
+        return SPACES.matcher(foldCharacters(text)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Everything but the whitespace collapsing; applied to each character on its own this
+     * yields the table entry.
+     */
+    private static String foldCharacters(String text) {
+        String ascii = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(ascii.toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    private static char[] buildTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        Arrays.fill(table, UNKNOWN);
+        Arrays.fill(table, Character.MIN_SURROGATE, Character.MAX_SURROGATE + 1, COMPLEX);
+        for (char c = 0; c < 0x80; c++) {
+            table[c] = classify(foldAscii(c));
+        }
+        return table;
+    }
+
+    /**
+     * {@link #foldCharacters} for one character, without the regexes.
+     */
+    private static String foldCharacter(char c) {
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        StringBuilder base = new StringBuilder(decomposed.length());
+        decomposed.codePoints()
+            .filter(codePoint -> !isMark(codePoint))
+            .forEach(base::appendCodePoint);
+        StringBuilder folded = new StringBuilder(base.length());
+        base.toString().toLowerCase(Locale.ROOT).codePoints()
+            .forEach(codePoint -> folded.append(codePoint < 0x80 ? foldAscii((char) codePoint) : " "));
+        return folded.toString();
+    }
+
+    private static boolean isMark(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    private static String foldAscii(char c) {
+        char lower = Character.toLowerCase(c);
+        boolean keep = (lower >= 'a' && lower <= 'z') || (lower >= '0' && lower <= '9') || isSpace(lower);
+        return String.valueOf(keep ? lower : ' ');
+    }
+
+    private static char classify(String folded) {
+        if (folded.isEmpty()) {
+            return DROP;
+        }
+        if (folded.chars().allMatch(c -> isSpace((char) c))) {
+            return ' ';
+        }
+        if (folded.length() == 1) {
+            char c = folded.charAt(0);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                return c;
+            }
+        }
+        return COMPLEX;
+    }
+
+    /**
+     * The characters {@code \s} matches.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,36 @@
+package com.nebulasur.demomagic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChatStreamTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void deterministicReplyArrivesAsOneEventBeforeDone() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        String request = "{\"kb\":\"A\",\"lang\":\"es\",\"message\":\"hola\"}";
+
+        String body = rest.postForObject("/api/chat/stream", new HttpEntity<>(request, headers), String.class);
+
+        Assertions.assertNotNull(body);
+        Assertions.assertFalse(body.contains("event:token"), body);
+        int reply = body.indexOf("event:reply");
+        int done = body.indexOf("event:done");
+        Assertions.assertTrue(reply >= 0 && done > reply, body);
+        Assertions.assertTrue(body.substring(done).contains("\"actions\""), body);
+    }
+}
@@ -0,0 +1,118 @@
+package com.nebulasur.demomagic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nebulasur.demomagic.session.SessionStoreServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Two backend instances on localhost sharing one session store, with no sticky sessions.
+ */
+class MultiInstanceSessionTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final HttpClient HTTP = HttpClient.newHttpClient();
+
+    private static SessionStoreServer store;
+    private static final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    @BeforeAll
+    static void startInstances() throws Exception {
+        store = new SessionStoreServer();
+        for (int i = 0; i < 2; i++) {
+            // Command-line arguments, so they win over application.properties.
+            instances.add(new SpringApplicationBuilder(DemoMagicApplication.class).run(
+                "--server.port=0",
+                "--server.address=127.0.0.1",
+                "--chat.sessions.persistence=remote",
+                "--chat.sessions.remote-url=" + store.url()
+            ));
+        }
+    }
+
+    @AfterAll
+    static void stopInstances() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        store.close();
+    }
+
+    @Test
+    void continuesFlowWhicheverInstanceServesTheNextMessage() throws Exception {
+        String sessionId = UUID.randomUUID().toString();
+
+        Assertions.assertTrue(chat(0, sessionId, "Quiero concertar una cita").contains("motivo"));
+        Assertions.assertTrue(chat(1, sessionId, "asesoria").contains("fecha"));
+        Assertions.assertTrue(chat(0, sessionId, "manana").contains("hora"));
+        Assertions.assertTrue(store.contains("A::" + sessionId));
+    }
+
+    @Test
+    void concurrentMessagesForOneSessionAdvanceTheFlowOnceEach() throws Exception {
+        String sessionId = UUID.randomUUID().toString();
+        chat(0, sessionId, "Quiero concertar una cita");
+
+        // Both instances answer the reason step at the same time; only one may move the flow
+        // to the date step, the other must replay against the new state.
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Callable<String>> calls = List.of(
+                () -> chat(0, sessionId, "asesoria"),
+                () -> chat(1, sessionId, "seguimiento")
+            );
+            List<String> replies = new ArrayList<>();
+            for (Future<String> future : pool.invokeAll(calls)) {
+                replies.add(future.get());
+            }
+            Assertions.assertEquals(1, replies.stream().filter(reply -> reply.contains("Que fecha")).count(), replies.toString());
+        } finally {
+            pool.shutdownNow();
+        }
+        Assertions.assertTrue(chat(1, sessionId, "manana").contains("hora"));
+    }
+
+    @Test
+    void asksToResendWhenEverySaveLosesTheRace() throws Exception {
+        String sessionId = UUID.randomUUID().toString();
+        store.rejectSaves(true);
+        try {
+            String reply = chat(0, sessionId, "Quiero concertar una cita");
+            Assertions.assertTrue(reply.contains("Vuelve a enviar tu mensaje"), reply);
+            Assertions.assertFalse(store.contains("A::" + sessionId));
+        } finally {
+            store.rejectSaves(false);
+        }
+        Assertions.assertTrue(chat(1, sessionId, "Quiero concertar una cita").contains("motivo"));
+    }
+
+    private static String chat(int instance, String sessionId, String message) throws Exception {
+        int port = ((ServletWebServerApplicationContext) instances.get(instance)).getWebServer().getPort();
+        String body = JSON.writeValueAsString(Map.of("kb", "A", "lang", "es", "sessionId", sessionId, "message", message));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/chat"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        HttpResponse<String> response = HTTP.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), response.body());
+        JsonNode json = JSON.readTree(response.body());
+        return json.path("reply").asText();
+    }
+}
@@ -0,0 +1,212 @@
+package com.nebulasur.demomagic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many slow chats in flight at once with {@code chat.virtual-threads=true}. Every request
+ * handler blocks on a model call that the stub upstream holds open until all of them have
+ * arrived; platform threads, carrier threads and heap are sampled at that peak and published
+ * as report entries. Each chat holds four sockets, so the default levels stay within a 1024
+ * open-file limit; raise it for larger runs, e.g.
+ * {@code mvn test -Dtest=VirtualThreadLoadTest -Dload.concurrency=1000,5000}.
+ */
+class VirtualThreadLoadTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static SlowCompletionServer upstream;
+    private static ConfigurableApplicationContext app;
+    private static ExecutorService clientThreads;
+    private static HttpClient http;
+
+    @BeforeAll
+    static void start() throws Exception {
+        upstream = new SlowCompletionServer();
+        // Command-line arguments, so they win over application.properties.
+        app = new SpringApplicationBuilder(DemoMagicApplication.class).run(
+            "--server.port=0",
+            "--server.address=127.0.0.1",
+            "--chat.virtual-threads=true",
+            "--OPENAI_API_KEY=test-key",
+            "--openai.base-url=" + upstream.url(),
+            "--kb.embeddings.store-path="
+        );
+        clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+        http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(clientThreads)
+            .build();
+    }
+
+    @AfterAll
+    static void stop() {
+        app.close();
+        upstream.close();
+        clientThreads.shutdownNow();
+    }
+
+    @Test
+    void blockedChatsDoNotEachHoldAPlatformThread(TestReporter reporter) throws Exception {
+        for (int concurrency : levels()) {
+            System.gc();
+            long heapBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            CountDownLatch release = upstream.hold(concurrency);
+
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                responses.add(http.sendAsync(chatRequest("pregunta " + concurrency + "-" + i), HttpResponse.BodyHandlers.ofString()));
+            }
+            Assertions.assertTrue(upstream.awaitArrivals(60, TimeUnit.SECONDS), "only " + upstream.arrived() + " chats reached the model");
+
+            long heapAtPeak = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            int platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long carrierThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getClass().getName().equals("jdk.internal.misc.CarrierThread"))
+                .count();
+            release.countDown();
+
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                HttpResponse<String> completed = response.get(60, TimeUnit.SECONDS);
+                Assertions.assertEquals(200, completed.statusCode(), completed.body());
+                Assertions.assertEquals(SlowCompletionServer.REPLY, JSON.readTree(completed.body()).path("reply").asText());
+            }
+
+            Map<String, String> sample = new LinkedHashMap<>();
+            sample.put("inFlightChats", String.valueOf(concurrency));
+            sample.put("platformThreads", String.valueOf(platformThreads));
+            sample.put("carrierThreads", String.valueOf(carrierThreads));
+            sample.put("heapDeltaMb", String.format(Locale.ROOT, "%.1f", (heapAtPeak - heapBefore) / 1024.0 / 1024.0));
+            sample.put("heapPerChatKb", String.format(Locale.ROOT, "%.1f", (heapAtPeak - heapBefore) / 1024.0 / concurrency));
+            reporter.publishEntry(sample);
+
+            // Without virtual threads every blocked chat would pin one request thread and one
+            // HttpClient worker; here the thread count must not follow the load.
+            Assertions.assertTrue(platformThreads < 64 + concurrency / 4, sample.toString());
+            Assertions.assertTrue(carrierThreads <= Runtime.getRuntime().availableProcessors() + concurrency / 10, sample.toString());
+        }
+    }
+
+    private static int[] levels() {
+        return Arrays.stream(System.getProperty("load.concurrency", "50,100,200").split(","))
+            .map(String::trim)
+            .mapToInt(Integer::parseInt)
+            .toArray();
+    }
+
+    private static HttpRequest chatRequest(String message) throws IOException {
+        int port = ((ServletWebServerApplicationContext) app).getWebServer().getPort();
+        String body = JSON.writeValueAsString(Map.of(
+            "kb", "A",
+            "lang", "es",
+            "message", message,
+            "messages", List.of(Map.of("role", "user", "content", message))
+        ));
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/chat"))
+            .timeout(Duration.ofSeconds(60))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    /**
+     * Stub of the OpenAI API whose completions only answer once the expected number of them are
+     * waiting and the test releases them. Embedding requests fail, which leaves the KB on
+     * lexical search.
+     */
+    private static final class SlowCompletionServer implements AutoCloseable {
+
+        static final String REPLY = "Respuesta de prueba";
+
+        private final HttpServer server;
+        private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+        private volatile CountDownLatch arrivals = new CountDownLatch(0);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+        private volatile int expected;
+
+        SlowCompletionServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+            server.setExecutor(handlers);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+        }
+
+        CountDownLatch hold(int count) {
+            expected = count;
+            release = new CountDownLatch(1);
+            arrivals = new CountDownLatch(count);
+            return release;
+        }
+
+        boolean awaitArrivals(long timeout, TimeUnit unit) throws InterruptedException {
+            return arrivals.await(timeout, unit);
+        }
+
+        long arrived() {
+            return expected - arrivals.getCount();
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            handlers.shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                exchange.getRequestBody().readAllBytes();
+                if (!exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                CountDownLatch gate = release;
+                arrivals.countDown();
+                try {
+                    gate.await(60, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = JSON.writeValueAsBytes(Map.of(
+                    "choices", List.of(Map.of("message", Map.of("role", "assistant", "content", REPLY)))
+                ));
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.nebulasur.demomagic.bench;
+
+import com.nebulasur.demomagic.search.HnswIndex;
+import com.nebulasur.demomagic.search.SearchHit;
+import com.nebulasur.demomagic.search.VectorMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 latency of {@link HnswIndex} against exact {@link VectorMatrix} scoring on clustered
+ * synthetic embeddings. Recall@10 of each efSearch setting is printed during setup.
+ * Run with {@code mvn -Pbench test -DskipTests -Dbench=HnswSearch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HnswSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERIES = 200;
+
+    @Param({"20000"})
+    private int items;
+
+    @Param({"384"})
+    private int dimensions;
+
+    @Param({"16"})
+    private int m;
+
+    @Param({"16", "64", "128"})
+    private int efSearch;
+
+    private VectorMatrix matrix;
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        float[][] centroids = new float[Math.max(8, items / 250)][];
+        for (int c = 0; c < centroids.length; c++) {
+            centroids[c] = gaussian(random, 1.0f);
+        }
+
+        List<float[]> rows = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            rows.add(around(centroids[random.nextInt(centroids.length)], random));
+        }
+        matrix = VectorMatrix.of(rows);
+
+        long start = System.nanoTime();
+        index = HnswIndex.build(matrix, m, 100, efSearch);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000L;
+
+        queries = new float[QUERIES][];
+        double recall = 0.0;
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = matrix.prepareQuery(around(centroids[random.nextInt(centroids.length)], random));
+            Set<Integer> exact = new HashSet<>();
+            matrix.search(queries[q], K).forEach(hit -> exact.add(hit.row()));
+            long found = index.search(queries[q], K).stream().map(SearchHit::row).filter(exact::contains).count();
+            recall += (double) found / K;
+        }
+        System.out.printf("%n[hnsw] items=%d m=%d efSearch=%d build=%dms recall@%d=%.3f%n",
+            items, m, efSearch, buildMillis, K, recall / QUERIES);
+    }
+
+    @Benchmark
+    public List<SearchHit> exact() {
+        return matrix.search(nextQuery(), K);
+    }
+
+    @Benchmark
+    public List<SearchHit> hnsw() {
+        return index.search(nextQuery(), K);
+    }
+
+    private float[] nextQuery() {
+        next = (next + 1) % queries.length;
+        return queries[next];
+    }
+
+    private float[] gaussian(Random random, float scale) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    private float[] around(float[] centroid, Random random) {
+        float[] noise = gaussian(random, 0.35f);
+        for (int d = 0; d < dimensions; d++) {
+            noise[d] += centroid[d];
+        }
+        return noise;
+    }
+}
@@ -0,0 +1,97 @@
+package com.nebulasur.demomagic.bench;
+
+import com.nebulasur.demomagic.intent.IntentMatcher;
+import com.nebulasur.demomagic.intent.IntentMatcher.KeywordGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of classifying a chat message: every keyword group and feature checked the
+ * previous way ({@code containsAny} re-normalizing each keyword, {@code String.matches}
+ * compiling each regex) against one {@link IntentMatcher#match} pass. Messages are the replay
+ * questions. Run with {@code mvn -Pbench test -DskipTests -Dbench=IntentMatch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntentMatchBenchmark {
+
+    private static final KeywordGroup[] GROUPS = KeywordGroup.values();
+
+    private List<String> messages;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = IntentMatchBenchmark.class.getResourceAsStream("/chatbot/questions.txt")) {
+            messages = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        }
+    }
+
+    @Benchmark
+    public void containsAnyChain(Blackhole blackhole) {
+        String message = nextMessage();
+        String normalized = normalizeText(message);
+        for (KeywordGroup group : GROUPS) {
+            blackhole.consume(containsAny(normalized, group.keywords()));
+        }
+        blackhole.consume(normalized.matches(".*\\b\\d{1,2}[/-]\\d{1,2}([/-]\\d{2,4})?\\b.*"));
+        blackhole.consume(normalized.matches(".*\\b([01]?\\d|2[0-3])[:h.]?[0-5]?\\d\\b.*")
+            || normalized.matches(".*\\b\\d{1,2}\\s*(am|pm)\\b.*"));
+        blackhole.consume(normalized.matches(".*\\b(19\\d{2}|20\\d{2})\\b.*"));
+        blackhole.consume(normalized.matches(".*\\b[a-hj-npr-z0-9]{17}\\b.*"));
+        blackhole.consume(normalized.matches(".*\\b\\d{4,}\\b.*"));
+        blackhole.consume(normalized.matches(".*\\b\\d+\\b.*"));
+        blackhole.consume(normalized.matches(".*[a-z]{4,}.*"));
+        blackhole.consume(message.matches(".*[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}.*"));
+        blackhole.consume(message.replaceAll("[^0-9]", "").length() >= 9);
+    }
+
+    @Benchmark
+    public IntentMatcher.Signals compiledMatcher() {
+        return IntentMatcher.match(nextMessage());
+    }
+
+    private String nextMessage() {
+        String message = messages.get(next);
+        next = next + 1 == messages.size() ? 0 : next + 1;
+        return message;
+    }
+
+    private static boolean containsAny(String text, List<String> terms) {
+        for (String term : terms) {
+            if (text.contains(normalizeText(term))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalizeText(String text) {
+        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+}
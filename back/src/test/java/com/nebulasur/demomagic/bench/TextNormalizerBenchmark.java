@@ -0,0 +1,70 @@
+package com.nebulasur.demomagic.bench;
+
+import com.nebulasur.demomagic.text.TextNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NFD-plus-three-regexes normalizer previously copied into each service against the
+ * table-driven {@link TextNormalizer}, on replay questions and on KB lines. Run with
+ * {@code mvn -Pbench test -DskipTests -Dbench=TextNormalizer}, adding {@code -prof gc} to the
+ * JMH arguments to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextNormalizerBenchmark {
+
+    @Param({"/chatbot/questions.txt", "/kb/kbA.txt"})
+    private String source;
+
+    private List<String> lines;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = TextNormalizerBenchmark.class.getResourceAsStream(source)) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                .filter(line -> !line.isBlank())
+                .toList();
+        }
+    }
+
+    @Benchmark
+    public String regexPipeline() {
+        String text = nextLine();
+        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+    @Benchmark
+    public String lookupTable() {
+        return TextNormalizer.normalize(nextLine());
+    }
+
+    private String nextLine() {
+        String line = lines.get(next);
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return line;
+    }
+}
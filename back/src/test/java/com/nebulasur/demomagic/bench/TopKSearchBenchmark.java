@@ -0,0 +1,89 @@
+package com.nebulasur.demomagic.bench;
+
+import com.nebulasur.demomagic.search.SearchHit;
+import com.nebulasur.demomagic.search.VectorMath;
+import com.nebulasur.demomagic.search.VectorMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact top-10 search over a {@link VectorMatrix}: the previous score-everything-then-sort
+ * selection against the bounded heap, single-threaded and split into fork-join partitions.
+ * Run with {@code mvn -Pbench test -DskipTests -Dbench=TopKSearch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKSearchBenchmark {
+
+    private static final int K = 10;
+
+    @Param({"5000", "50000"})
+    private int items;
+
+    @Param({"384"})
+    private int dimensions;
+
+    private List<float[]> rows;
+    private VectorMatrix sequential;
+    private VectorMatrix partitioned;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        rows = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            rows.add(randomVector(random));
+        }
+        sequential = VectorMatrix.of(rows, Integer.MAX_VALUE);
+        partitioned = VectorMatrix.of(rows, 1);
+        query = sequential.prepareQuery(randomVector(random));
+    }
+
+    @Benchmark
+    public List<SearchHit> fullSort() {
+        List<SearchHit> hits = new ArrayList<>(items);
+        for (int row = 0; row < items; row++) {
+            hits.add(new SearchHit(row, sequential.score(query, row)));
+        }
+        hits.sort(Comparator.comparingDouble(SearchHit::score).reversed());
+        return List.copyOf(hits.subList(0, K));
+    }
+
+    @Benchmark
+    public List<SearchHit> heapSequential() {
+        return sequential.search(query, K);
+    }
+
+    @Benchmark
+    public List<SearchHit> heapPartitioned() {
+        return partitioned.search(query, K);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,129 @@
+package com.nebulasur.demomagic.bench;
+
+import com.nebulasur.demomagic.search.VectorMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scores one query against a whole tenant: the previous {@code Map<String, List<Double>>}
+ * cosine path against the normalized {@link VectorMatrix} with scalar and SIMD dot products.
+ * Run with {@code mvn -Pbench test -DskipTests -Dbench=VectorSearch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorSearchBenchmark {
+
+    @Param({"1000", "20000"})
+    private int items;
+
+    @Param({"1536"})
+    private int dimensions;
+
+    private List<String> ids;
+    private Map<String, List<Double>> legacyVectors;
+    private List<Double> legacyQuery;
+    private VectorMatrix matrix;
+    private float[] unitQuery;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ids = new ArrayList<>(items);
+        legacyVectors = new HashMap<>();
+        List<float[]> rows = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            float[] row = randomVector(random);
+            rows.add(row);
+            ids.add("ITEM-" + i);
+            legacyVectors.put("ITEM-" + i, toDoubles(row));
+        }
+        float[] query = randomVector(random);
+        legacyQuery = toDoubles(query);
+        matrix = VectorMatrix.of(rows);
+        unitQuery = matrix.prepareQuery(query);
+    }
+
+    @Benchmark
+    public double legacyBoxedCosine() {
+        double best = -1;
+        for (String id : ids) {
+            best = Math.max(best, cosineSimilarity(legacyQuery, legacyVectors.get(id)));
+        }
+        return best;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dkb.vector.simd=false")
+    public float matrixScalarDot() {
+        return bestMatrixScore();
+    }
+
+    @Benchmark
+    public float matrixSimdDot() {
+        return bestMatrixScore();
+    }
+
+    private float bestMatrixScore() {
+        float best = -1f;
+        for (int row = 0; row < items; row++) {
+            best = Math.max(best, matrix.score(unitQuery, row));
+        }
+        return best;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static List<Double> toDoubles(float[] vector) {
+        List<Double> doubles = new ArrayList<>(vector.length);
+        for (float component : vector) {
+            doubles.add((double) component);
+        }
+        return doubles;
+    }
+
+    private static double cosineSimilarity(List<Double> a, List<Double> b) {
+        if (a == null || b == null || a.isEmpty() || b.isEmpty() || a.size() != b.size()) {
+            return -1;
+        }
+
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.size(); i++) {
+            dot += a.get(i) * b.get(i);
+            normA += a.get(i) * a.get(i);
+            normB += b.get(i) * b.get(i);
+        }
+
+        if (normA == 0.0 || normB == 0.0) {
+            return -1;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
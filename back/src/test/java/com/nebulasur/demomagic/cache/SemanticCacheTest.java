@@ -0,0 +1,42 @@
+package com.nebulasur.demomagic.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class SemanticCacheTest {
+
+    @Test
+    void hitsOnlyAboveThresholdWithinThePartition() {
+        SemanticCache<String> cache = new SemanticCache<>(10, 60_000L, 0.9);
+        cache.put("A::es", new float[] {1f, 0f, 0f}, "horario");
+        cache.put("A::es", new float[] {0f, 1f, 0f}, "direccion");
+
+        SemanticCache.Hit<String> hit = cache.lookup("A::es", new float[] {2f, 0.3f, 0f}).orElseThrow();
+        Assertions.assertEquals("horario", hit.value());
+        Assertions.assertTrue(hit.similarity() >= 0.9);
+        Assertions.assertTrue(cache.lookup("A::es", new float[] {1f, 1f, 0f}).isEmpty());
+        Assertions.assertTrue(cache.lookup("A::en", new float[] {1f, 0f, 0f}).isEmpty());
+        Assertions.assertTrue(cache.lookup("B::es", new float[] {1f, 0f, 0f}).isEmpty());
+    }
+
+    @Test
+    void overwritesOldestWhenFullAndDropsFalseHits() {
+        SemanticCache<String> cache = new SemanticCache<>(2, 60_000L, 0.9);
+        cache.put("A::es", new float[] {1f, 0f}, "first");
+        cache.put("A::es", new float[] {0f, 1f}, "second");
+        cache.put("A::es", new float[] {-1f, 0f}, "third");
+        Assertions.assertTrue(cache.lookup("A::es", new float[] {1f, 0f}).isEmpty());
+
+        SemanticCache.Hit<String> hit = cache.lookup("A::es", new float[] {0f, 1f}).orElseThrow();
+        cache.recordVerification(true);
+        Assertions.assertTrue(cache.invalidate("A::es", hit.id()));
+        Assertions.assertTrue(cache.lookup("A::es", new float[] {0f, 1f}).isEmpty());
+
+        Map<String, Object> stats = cache.stats();
+        Assertions.assertEquals(1, stats.get("size"));
+        Assertions.assertEquals(1L, stats.get("upstreamCallsSaved"));
+        Assertions.assertEquals(1.0, stats.get("falseHitRate"));
+    }
+}
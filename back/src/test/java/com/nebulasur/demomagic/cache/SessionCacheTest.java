@@ -0,0 +1,52 @@
+package com.nebulasur.demomagic.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class SessionCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        SessionCache<String, StringBuilder> cache = new SessionCache<>(2, Long.MAX_VALUE, 60_000L, value -> 0L);
+        StringBuilder first = cache.getOrCreate("a", key -> new StringBuilder("a"));
+        cache.getOrCreate("b", key -> new StringBuilder("b"));
+        cache.getOrCreate("a", key -> new StringBuilder("fresh"));
+        cache.getOrCreate("c", key -> new StringBuilder("c"));
+
+        Assertions.assertSame(first, cache.getOrCreate("a", key -> new StringBuilder("fresh")));
+        Assertions.assertEquals("fresh", cache.getOrCreate("b", key -> new StringBuilder("fresh")).toString());
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(2L, cache.stats().get("sizeEvictions"));
+    }
+
+    @Test
+    void evictsBeyondMaxWeightUsingTheWeightLeftByThePreviousAccess() {
+        SessionCache<String, StringBuilder> cache = new SessionCache<>(10, 10L, 60_000L, StringBuilder::length);
+        cache.getOrCreate("a", key -> new StringBuilder()).append("123456");
+        cache.getOrCreate("b", key -> new StringBuilder()).append("123456");
+        Assertions.assertEquals(2, cache.size());
+
+        cache.getOrCreate("a", key -> new StringBuilder());
+        cache.getOrCreate("b", key -> new StringBuilder());
+
+        Map<String, Object> stats = cache.stats();
+        Assertions.assertEquals(1, stats.get("size"));
+        Assertions.assertEquals(6L, stats.get("approximateBytes"));
+        Assertions.assertEquals(1L, stats.get("memoryEvictions"));
+    }
+
+    @Test
+    void replacesAndSweepsIdleEntries() throws InterruptedException {
+        SessionCache<String, StringBuilder> cache = new SessionCache<>(10, Long.MAX_VALUE, 20L, value -> 0L);
+        StringBuilder first = cache.getOrCreate("a", key -> new StringBuilder());
+        cache.getOrCreate("b", key -> new StringBuilder());
+        Thread.sleep(40L);
+
+        Assertions.assertNotSame(first, cache.getOrCreate("a", key -> new StringBuilder()));
+        Assertions.assertEquals(1, cache.sweep());
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(2L, cache.stats().get("idleEvictions"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.nebulasur.demomagic.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(5_000L);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> flight.execute("A::horario", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "9:30-19:00";
+                })));
+            }
+            while ((long) flight.stats().get("coalesced") < 7) {
+                Thread.sleep(5L);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertEquals("9:30-19:00", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void followerLoadsItselfWhenTheLeaderIsStuck() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(50L);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = pool.submit(() -> flight.execute("k", () -> {
+                await(release);
+                return "leader";
+            }));
+            while (flight.inFlight() == 0) {
+                Thread.sleep(5L);
+            }
+            Assertions.assertEquals("follower", flight.execute("k", () -> "follower"));
+            Assertions.assertEquals(1L, flight.stats().get("timeouts"));
+            release.countDown();
+            Assertions.assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void asyncCallersShareOneLoadWithoutBlocking() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(5_000L);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(flight.executeAsync("A::horario", () -> {
+                loads.incrementAndGet();
+                return upstream;
+            }));
+        }
+        Assertions.assertEquals(1, flight.inFlight());
+        Assertions.assertTrue(results.stream().noneMatch(CompletableFuture::isDone));
+
+        upstream.complete("9:30-19:00");
+        for (CompletableFuture<String> result : results) {
+            Assertions.assertEquals("9:30-19:00", result.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(7L, flight.stats().get("coalesced"));
+        Assertions.assertEquals(0, flight.inFlight());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
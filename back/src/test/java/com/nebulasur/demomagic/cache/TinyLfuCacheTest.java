@@ -0,0 +1,62 @@
+package com.nebulasur.demomagic.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class TinyLfuCacheTest {
+
+    @Test
+    void keepsPopularEntriesThroughAScanOfOneOffKeys() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 60_000L);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot-" + i, key -> key);
+            }
+        }
+        for (int i = 0; i < 10_000; i++) {
+            cache.get("cold-" + i, key -> key);
+        }
+
+        int hotLeft = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.getIfPresent("hot-" + i) != null) {
+                hotLeft++;
+            }
+        }
+        Assertions.assertTrue(hotLeft >= 45, "hot entries left: " + hotLeft);
+        Assertions.assertTrue(cache.size() <= 100);
+        Assertions.assertTrue((long) cache.stats().get("admissionRejections") > 0);
+    }
+
+    @Test
+    void expiresEntriesOnReadAndOnSweep() throws Exception {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 20L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        Thread.sleep(40L);
+        cache.put("c", "3");
+
+        Assertions.assertNull(cache.getIfPresent("a"));
+        Assertions.assertEquals(1, cache.sweep());
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals("3", cache.getIfPresent("c"));
+        Assertions.assertEquals(2L, cache.stats().get("expirations"));
+    }
+
+    @Test
+    void shrinksOnSetMaximumAndRecordsLoads() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 60_000L);
+        for (int i = 0; i < 10; i++) {
+            cache.get("k" + i, key -> key.toUpperCase());
+        }
+        Assertions.assertNull(cache.get("missing", key -> null));
+        cache.setMaximum(4);
+
+        Map<String, Object> stats = cache.stats();
+        Assertions.assertEquals(4, stats.get("size"));
+        Assertions.assertEquals(11L, stats.get("loads"));
+        Assertions.assertEquals(11L, stats.get("misses"));
+    }
+}
@@ -0,0 +1,398 @@
+package com.nebulasur.demomagic.intent;
+
+import com.nebulasur.demomagic.intent.IntentMatcher.Feature;
+import com.nebulasur.demomagic.intent.IntentMatcher.KeywordGroup;
+import com.nebulasur.demomagic.intent.IntentMatcher.Signals;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * {@link IntentMatcher} must classify messages exactly like the {@code containsAny} substring
+ * predicates and regexes ChatService used before it, copied below with their original keyword
+ * lists. The only intended difference is that slash dates are read from the raw message.
+ */
+class IntentMatcherTest {
+
+    private static final String[] TENANTS = {"A", "B", "C"};
+
+    @Test
+    void matchesLegacyIntentsForReplayQuestionsAndKnowledgeBases() throws IOException {
+        List<String> messages = new ArrayList<>(lines("/chatbot/questions.txt"));
+        for (String tenant : TENANTS) {
+            messages.addAll(lines("/kb/kb" + tenant + ".txt"));
+        }
+        Assertions.assertFalse(messages.isEmpty());
+        messages.forEach(IntentMatcherTest::assertSameAsLegacy);
+    }
+
+    @Test
+    void matchesLegacyIntentsForRandomKeywordMixes() {
+        List<String> fragments = new ArrayList<>();
+        for (KeywordGroup group : KeywordGroup.values()) {
+            fragments.addAll(group.keywords());
+        }
+        fragments.addAll(List.of(
+            "Á", "ñ", "¿", "?", "!", ",", ".", ":", "@", "/", "-", "  ", "\t", "x", "s", "es",
+            "10", "10:30", "9h", "17h45", "5pm", "5 pm", "24", "2019", "1999", "250000", "15/02",
+            "ana@correo.es", "+34 600 123 456", "vf1rfb00x56789012", "VF1RFB00X56789012"
+        ));
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            StringBuilder message = new StringBuilder();
+            int parts = random.nextInt(6);
+            for (int j = 0; j < parts; j++) {
+                String fragment = fragments.get(random.nextInt(fragments.size()));
+                message.append(random.nextBoolean() ? fragment.toUpperCase(Locale.ROOT) : fragment);
+                message.append(random.nextInt(4) == 0 ? "" : " ");
+            }
+            assertSameAsLegacy(message.toString());
+        }
+    }
+
+    @Test
+    void readsSlashDatesFromTheRawMessage() {
+        Assertions.assertFalse(Legacy.looksLikeDate(Legacy.normalizeText("el 15/02")));
+        Assertions.assertEquals("15/02", IntentMatcher.match("el 15/02").feature(Feature.DATE));
+        Assertions.assertEquals("1-3-2025", IntentMatcher.match("vale, 1-3-2025 a las 10").feature(Feature.DATE));
+    }
+
+    private static void assertSameAsLegacy(String message) {
+        String normalized = Legacy.normalizeText(message);
+        Signals signals = IntentMatcher.match(message);
+        Assertions.assertEquals(normalized, signals.normalized(), message);
+
+        for (KeywordGroup group : KeywordGroup.values()) {
+            Assertions.assertEquals(Legacy.containsAny(normalized, group.keywords().toArray(String[]::new)), signals.has(group), group + " in " + message);
+        }
+        for (String tenant : TENANTS) {
+            Assertions.assertEquals(Legacy.detectIntent(tenant, normalized), Current.detectIntent(tenant, signals), tenant + ": " + message);
+        }
+
+        Assertions.assertEquals(Legacy.looksLikeTime(normalized), Current.looksLikeTime(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeContact(message), Current.looksLikeContact(signals), message);
+        Assertions.assertEquals(Legacy.isValidReason(message), Current.isValidReason(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeZone(normalized), Current.looksLikeZone(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeBudget(normalized), Current.looksLikeBudget(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeRooms(normalized), Current.looksLikeRooms(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeVehicleData(normalized), Current.looksLikeVehicleData(signals), message);
+        Assertions.assertEquals(Legacy.looksLikeMode(normalized), Current.looksLikeMode(signals), message);
+    }
+
+    private static List<String> lines(String resource) throws IOException {
+        try (InputStream in = IntentMatcherTest.class.getResourceAsStream(resource)) {
+            Assertions.assertNotNull(in, resource);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        }
+    }
+
+    /**
+     * The bit tests ChatService runs on {@link Signals}.
+     */
+    private static final class Current {
+
+        static String detectIntent(String kb, Signals signals) {
+            if (signals.isBlank()) {
+                return "DEFAULT";
+            }
+            if (signals.has(KeywordGroup.PRIVACY) || (signals.has(KeywordGroup.ORDER) && signals.has(KeywordGroup.THIRD_PARTY))) {
+                return "PRIVACY";
+            }
+            if (asksContactInfo(signals)) {
+                return "CONTACT_INFO";
+            }
+            if (signals.has(KeywordGroup.PERSONAL)) {
+                return "PERSONAL";
+            }
+            if (signals.has(KeywordGroup.SMALL_TALK)) {
+                return "SMALLTALK";
+            }
+            if (signals.normalized().length() <= 20 && signals.has(KeywordGroup.GREETING)) {
+                return "GREETING";
+            }
+            if (signals.has(KeywordGroup.DIRECTIONS)) {
+                return "DIRECTIONS";
+            }
+            if (asksOfficeLocation(signals)) {
+                return "LOCATION";
+            }
+            if (signals.has(KeywordGroup.APPOINTMENT)) {
+                return "APPOINTMENT";
+            }
+            if (signals.has(KeywordGroup.COMPANY_OVERVIEW)) {
+                return "IDENTITY";
+            }
+            if ("A".equalsIgnoreCase(kb) && signals.has(KeywordGroup.PROPERTY_SEARCH)) {
+                return "PROPERTY_SEARCH";
+            }
+            if (signals.has(KeywordGroup.SERVICE_LIST)) {
+                return "CATALOG";
+            }
+            return "DEFAULT";
+        }
+
+        static boolean asksContactInfo(Signals signals) {
+            return !signals.has(KeywordGroup.OWN_CONTACT)
+                && (asksOfficeLocation(signals) || signals.has(KeywordGroup.DIRECTIONS) || signals.has(KeywordGroup.CONTACT));
+        }
+
+        static boolean asksOfficeLocation(Signals signals) {
+            return !signals.has(KeywordGroup.OWN_CONTACT) && signals.has(KeywordGroup.OFFICE_LOCATION);
+        }
+
+        static boolean isValidReason(Signals signals) {
+            String normalized = signals.normalized();
+            return normalized.length() >= 3
+                && !normalized.endsWith("?")
+                && !(signals.has(KeywordGroup.DATE_WORD) || signals.has(Feature.DATE))
+                && !looksLikeTime(signals)
+                && !looksLikeContact(signals);
+        }
+
+        static boolean looksLikeTime(Signals signals) {
+            return signals.has(KeywordGroup.TIME_WORD) || signals.has(Feature.TIME);
+        }
+
+        static boolean looksLikeContact(Signals signals) {
+            return signals.has(Feature.EMAIL) || signals.has(Feature.PHONE);
+        }
+
+        static boolean looksLikeZone(Signals signals) {
+            return signals.has(KeywordGroup.ZONE) || signals.has(Feature.WORD);
+        }
+
+        static boolean looksLikeBudget(Signals signals) {
+            return signals.has(Feature.BUDGET) || signals.has(KeywordGroup.BUDGET_WORD);
+        }
+
+        static boolean looksLikeRooms(Signals signals) {
+            return signals.has(Feature.NUMBER) || signals.has(KeywordGroup.ROOMS);
+        }
+
+        static boolean looksLikeVehicleData(Signals signals) {
+            return signals.has(Feature.VIN) || (signals.has(Feature.YEAR) && signals.has(KeywordGroup.ENGINE));
+        }
+
+        static boolean looksLikeMode(Signals signals) {
+            return signals.has(KeywordGroup.MODE);
+        }
+    }
+
+    /**
+     * ChatService's predicates before {@link IntentMatcher}, unchanged.
+     */
+    private static final class Legacy {
+
+        static String detectIntent(String kb, String normalizedMessage) {
+            if (normalizedMessage.isBlank()) {
+                return "DEFAULT";
+            }
+            if (isPrivacyRequest(normalizedMessage)) {
+                return "PRIVACY";
+            }
+            if (asksContactInfo(normalizedMessage)) {
+                return "CONTACT_INFO";
+            }
+            if (isPersonalRequest(normalizedMessage)) {
+                return "PERSONAL";
+            }
+            if (isSmallTalk(normalizedMessage)) {
+                return "SMALLTALK";
+            }
+            if (isGreeting(normalizedMessage)) {
+                return "GREETING";
+            }
+            if (asksDirections(normalizedMessage)) {
+                return "DIRECTIONS";
+            }
+            if (asksOfficeLocation(normalizedMessage)) {
+                return "LOCATION";
+            }
+            if (asksAppointment(normalizedMessage)) {
+                return "APPOINTMENT";
+            }
+            if (asksCompanyOverview(normalizedMessage)) {
+                return "IDENTITY";
+            }
+            if (isPropertySearchIntent(kb, normalizedMessage)) {
+                return "PROPERTY_SEARCH";
+            }
+            if (asksServiceList(normalizedMessage)) {
+                return "CATALOG";
+            }
+            return "DEFAULT";
+        }
+
+        static boolean asksCompanyOverview(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "de que va", "a que se dedica", "quienes sois", "quienes son", "informacion de la empresa",
+                "quien eres", "who are you", "about the company", "company info", "what do you do");
+        }
+
+        static boolean asksServiceList(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "servicios", "productos", "articulos", "que teneis", "que ofreces", "que ofreceis", "catalogo", "lista",
+                "services", "products", "catalog", "list");
+        }
+
+        static boolean isPropertySearchIntent(String kb, String normalizedMessage) {
+            if (!"A".equalsIgnoreCase(kb)) {
+                return false;
+            }
+            return containsAny(normalizedMessage,
+                "viviendas", "vivienda", "pisos", "casas", "chalet", "obra nueva", "locales", "en venta", "comprar vivienda",
+                "properties", "apartments", "homes", "for sale");
+        }
+
+        static boolean asksContactInfo(String normalizedMessage) {
+            if (containsAny(normalizedMessage, "mi telefono", "my phone", "mi email", "my email")) {
+                return false;
+            }
+            return asksOfficeLocation(normalizedMessage)
+                || asksDirections(normalizedMessage)
+                || containsAny(normalizedMessage,
+                    "whatsapp", "wsp", "wasap", "contacto", "atencion al cliente",
+                    "persona real", "humano", "humana", "hablar con", "ventas", "soporte", "supervisor", "responsable",
+                    "horario", "a que hora", "abris", "abrir", "cerrar", "cerrais", "cerras",
+                    "fin de semana", "fines de semana", "sabado", "domingo", "atendeis", "abierto", "cerrado",
+                    "sin cita", "cita previa", "puedo pasar ahora", "pasar ahora", "atenderme hoy",
+                    "contact", "customer service", "human", "real person", "talk to", "sales", "support", "manager",
+                    "opening hours", "open", "close", "weekend", "available today");
+        }
+
+        static boolean asksOfficeLocation(String normalizedMessage) {
+            if (containsAny(normalizedMessage, "mi telefono", "my phone", "mi email", "my email")) {
+                return false;
+            }
+            return containsAny(normalizedMessage,
+                "donde estais", "donde estan", "ubicacion", "direccion", "oficina", "horario", "telefono", "mapa", "email", "correo",
+                "where are you", "location", "address", "office", "phone", "schedule", "maps", "email");
+        }
+
+        static boolean asksDirections(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "como llego", "como llegar", "parking", "aparcamiento", "transporte", "metro", "bus", "google maps", "indicaciones",
+                "how to get", "directions", "parking", "public transport", "maps");
+        }
+
+        static boolean asksAppointment(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "cita", "concertar", "agendar", "reunion", "appointment", "book", "meeting", "schedule");
+        }
+
+        static boolean isPrivacyRequest(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "privacidad", "conversacion privada", "es privada", "rgpd", "gdpr",
+                "datos personales", "guardais mis datos", "guardar mis datos", "compartis mis datos",
+                "borrar mis datos", "que datos teneis", "se guarda lo que escribo",
+                "me esta leyendo una persona", "eres una ia", "eres ia", "ia o humano", "ia o un humano",
+                "ai or human", "human or ai", "are you ai", "are you human",
+                "privacy", "personal data", "store my data", "share my data", "delete my data")
+                || (containsAny(normalizedMessage, "pedido", "pedidos", "order", "orders")
+                && containsAny(normalizedMessage, "juan", "perez", "otra persona", "tercero", "another person", "third party"));
+        }
+
+        static boolean isPersonalRequest(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "que llevas puesto", "tu edad", "cuantos anos", "donde vives", "eres real", "what are you wearing", "your age");
+        }
+
+        static boolean isSmallTalk(String normalizedMessage) {
+            return containsAny(normalizedMessage, "chiste", "joke", "cuentame algo");
+        }
+
+        static boolean isGreeting(String normalizedMessage) {
+            return normalizedMessage.length() <= 20
+                && containsAny(normalizedMessage, "hola", "buenas", "hello", "hi", "hey", "buenos dias", "buenas tardes");
+        }
+
+        static boolean isValidReason(String rawMessage) {
+            String normalized = normalizeText(rawMessage);
+            return normalized.length() >= 3
+                && !normalized.endsWith("?")
+                && !looksLikeDate(normalized)
+                && !looksLikeTime(normalized)
+                && !looksLikeContact(rawMessage);
+        }
+
+        static boolean looksLikeDate(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "hoy", "manana", "pasado manana", "lunes", "martes", "miercoles", "jueves", "viernes", "sabado", "domingo",
+                "today", "tomorrow", "monday", "tuesday", "wednesday", "thursday", "friday")
+                || normalizedMessage.matches(".*\\b\\d{1,2}[/-]\\d{1,2}([/-]\\d{2,4})?\\b.*");
+        }
+
+        static boolean looksLikeTime(String normalizedMessage) {
+            return containsAny(normalizedMessage, "manana", "tarde", "noche", "morning", "afternoon", "evening")
+                || normalizedMessage.matches(".*\\b([01]?\\d|2[0-3])[:h.]?[0-5]?\\d\\b.*")
+                || normalizedMessage.matches(".*\\b\\d{1,2}\\s*(am|pm)\\b.*");
+        }
+
+        static boolean looksLikeMode(String normalizedMessage) {
+            return containsAny(normalizedMessage, "presencial", "online", "virtual", "remoto", "in person");
+        }
+
+        static boolean looksLikeContact(String rawMessage) {
+            if (rawMessage == null || rawMessage.isBlank()) {
+                return false;
+            }
+            String text = rawMessage.trim();
+            if (text.matches(".*[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}.*")) {
+                return true;
+            }
+            String digits = text.replaceAll("[^0-9]", "");
+            return digits.length() >= 9;
+        }
+
+        static boolean looksLikeZone(String normalizedMessage) {
+            return containsAny(normalizedMessage,
+                "madrid", "barcelona", "valencia", "sevilla", "malaga", "zaragoza", "centro", "norte", "sur", "zona")
+                || normalizedMessage.matches(".*[a-z]{4,}.*");
+        }
+
+        static boolean looksLikeBudget(String normalizedMessage) {
+            return normalizedMessage.matches(".*\\b\\d{4,}\\b.*")
+                || containsAny(normalizedMessage, "eur", "euro", "mil", "k");
+        }
+
+        static boolean looksLikeRooms(String normalizedMessage) {
+            return normalizedMessage.matches(".*\\b\\d+\\b.*")
+                || containsAny(normalizedMessage, "habitacion", "habitaciones", "dormitorio", "bedroom");
+        }
+
+        static boolean looksLikeVehicleData(String normalizedMessage) {
+            boolean hasYear = normalizedMessage.matches(".*\\b(19\\d{2}|20\\d{2})\\b.*");
+            boolean hasEngine = containsAny(normalizedMessage, "motor", "diesel", "gasolina", "hdi", "tdi", "tsi", "dci", "cv");
+            boolean hasVin = normalizedMessage.matches(".*\\b[a-hj-npr-z0-9]{17}\\b.*");
+            return hasVin || (hasYear && hasEngine);
+        }
+
+        static String normalizeText(String text) {
+            if (text == null) {
+                return "";
+            }
+            String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+            return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
+        }
+
+        static boolean containsAny(String text, String... terms) {
+            for (String term : terms) {
+                if (text.contains(normalizeText(term))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
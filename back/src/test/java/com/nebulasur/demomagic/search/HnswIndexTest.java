@@ -0,0 +1,67 @@
+package com.nebulasur.demomagic.search;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall@10 of {@link HnswIndex} against exact {@link VectorMatrix} search on fixed-seed
+ * unclustered vectors, where approximate search is hardest. At the sizes below recall is
+ * about 0.95 with efSearch 64 and 0.99 with 128.
+ */
+class HnswIndexTest {
+
+    private static final int ITEMS = 3000;
+    private static final int DIMENSIONS = 64;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+
+    @Test
+    void findsMostOfTheExactTopK() {
+        Random random = new Random(42);
+        List<float[]> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(gaussian(random));
+        }
+        VectorMatrix matrix = VectorMatrix.of(rows);
+        HnswIndex index = HnswIndex.build(matrix, 16, 100, 64);
+
+        double recall = 0.0;
+        double widerRecall = 0.0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = matrix.prepareQuery(gaussian(random));
+            Set<Integer> exact = new HashSet<>();
+            matrix.search(query, K).forEach(hit -> exact.add(hit.row()));
+            recall += overlap(index.search(query, K), exact);
+            widerRecall += overlap(index.search(query, K, 128), exact);
+        }
+        recall /= QUERIES;
+        widerRecall /= QUERIES;
+
+        Assertions.assertTrue(recall >= 0.90, "recall@10 = " + recall);
+        Assertions.assertTrue(widerRecall >= 0.97, "recall@10 with efSearch 128 = " + widerRecall);
+    }
+
+    @Test
+    void rejectsDimensionsNoArrayCanHold() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HnswIndex(Integer.MAX_VALUE, 16, 100, 64, 42L));
+    }
+
+    private static double overlap(List<SearchHit> hits, Set<Integer> exact) {
+        Assertions.assertEquals(K, hits.size());
+        return (double) hits.stream().map(SearchHit::row).filter(exact::contains).count() / K;
+    }
+
+    private static float[] gaussian(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,94 @@
+package com.nebulasur.demomagic.search;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * BM25 ranking, the capped normalized score and serialization of {@link InvertedIndex} on a
+ * small fixed corpus.
+ */
+class InvertedIndexTest {
+
+    private static final Function<String, List<String>> TOKENIZER =
+        text -> Arrays.stream(text.toLowerCase(Locale.ROOT).split("\\s+")).filter(token -> !token.isEmpty()).toList();
+
+    private static final List<String> CORPUS = List.of(
+        "politica de devoluciones de pedidos",
+        "envio de pedidos internacionales y envio urgente",
+        "horario de la tienda fisica",
+        "envio gratis",
+        "pago con tarjeta y transferencia",
+        "seguimiento del pedido y del envio por correo con numero de seguimiento"
+    );
+
+    private static final List<String> QUERIES = List.of(
+        "envio urgente", "envio", "pedidos", "de la tienda", "pago y envio", "envio desconocido", "nada"
+    );
+
+    @Test
+    void ranksByTermRarityFrequencyAndLength() {
+        InvertedIndex index = InvertedIndex.build(CORPUS, TOKENIZER);
+
+        // Only row 1 has the rare "urgente"; among the rest the short row beats the long one.
+        Assertions.assertEquals(List.of(1, 3, 5), rows(index.search("envio urgente", 10)));
+        Assertions.assertEquals(List.of(1, 3), rows(index.search("envio urgente", 2)));
+        Assertions.assertEquals(List.of(2, 0, 1, 5), rows(index.search("de la tienda", 10)));
+        Assertions.assertEquals(List.of(), index.search("nada", 10));
+        Assertions.assertEquals(List.of(), InvertedIndex.empty().search("envio", 10));
+    }
+
+    @Test
+    void capsScoresAtOneAndPenalizesUnknownTerms() {
+        InvertedIndex index = InvertedIndex.build(CORPUS, TOKENIZER);
+
+        for (String query : QUERIES) {
+            for (SearchHit hit : index.search(query, 10)) {
+                Assertions.assertTrue(hit.score() > 0f && hit.score() <= 1f, query + " -> " + hit);
+            }
+        }
+        // Rows 1 (term twice) and 3 (short) both exceed 1 before the cap, tie, and keep catalog order.
+        List<SearchHit> envio = index.search("envio", 10);
+        Assertions.assertEquals(List.of(1, 3, 5), rows(envio));
+        Assertions.assertEquals(1f, envio.get(0).score());
+        Assertions.assertEquals(1f, envio.get(1).score());
+        Assertions.assertTrue(envio.get(2).score() < 1f, envio.get(2).toString());
+
+        SearchHit withUnknown = index.search("envio desconocido", 10).get(0);
+        Assertions.assertEquals(3, withUnknown.row());
+        Assertions.assertTrue(withUnknown.score() < 0.5f, withUnknown.toString());
+    }
+
+    @Test
+    void reloadedIndexReturnsTheSameHits() throws Exception {
+        InvertedIndex.Builder builder = InvertedIndex.builder(TOKENIZER);
+        CORPUS.forEach(builder::add);
+        InvertedIndex index = builder.build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+            out.writeInt(0xCAFE);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        InvertedIndex reloaded = InvertedIndex.readFrom(buffer, TOKENIZER);
+
+        Assertions.assertEquals(0xCAFE, buffer.getInt(), "readFrom must stop at the end of the index");
+        Assertions.assertEquals(index.documents(), reloaded.documents());
+        Assertions.assertEquals(index.terms(), reloaded.terms());
+        for (String query : QUERIES) {
+            Assertions.assertEquals(index.search(query, 10), reloaded.search(query, 10), query);
+        }
+    }
+
+    private static List<Integer> rows(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::row).toList();
+    }
+}
@@ -0,0 +1,21 @@
+package com.nebulasur.demomagic.search;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class VectorMatrixTest {
+
+    @Test
+    void rejectsMatricesLargerThanOneArray() {
+        List<float[]> vectors = new ArrayList<>(Collections.nCopies(1_400_000, null));
+        vectors.set(0, new float[1536]);
+        vectors.get(0)[0] = 1f;
+
+        IllegalArgumentException error = Assertions.assertThrows(IllegalArgumentException.class, () -> VectorMatrix.of(vectors));
+        Assertions.assertTrue(error.getMessage().contains("1400000 rows of 1536 dimensions"), error.getMessage());
+    }
+}
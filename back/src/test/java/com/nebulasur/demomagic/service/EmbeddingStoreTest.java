@@ -0,0 +1,59 @@
+package com.nebulasur.demomagic.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+class EmbeddingStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsEachTenantsVectorsInItsOwnFile() {
+        EmbeddingStore store = new EmbeddingStore(directory.resolve("embeddings.bin").toString(), "model");
+        String a = store.key("alpha");
+        String b = store.key("beta");
+        store.save("A", Map.of(a, new float[] {1f, 2f}));
+        store.save("B", Map.of(b, new float[] {3f}));
+
+        Assertions.assertTrue(Files.isRegularFile(directory.resolve("embeddings-A.bin")));
+        Assertions.assertArrayEquals(new float[] {1f, 2f}, store.load("A", List.of(a, b)).get(a));
+        Assertions.assertEquals(List.of(b), List.copyOf(store.load("B", List.of(a, b)).keySet()));
+    }
+
+    @Test
+    void treatsCorruptDimensionsAsAnEmptyStore() throws Exception {
+        EmbeddingStore store = new EmbeddingStore(directory.resolve("embeddings.bin").toString(), "model");
+        String key = store.key("alpha");
+        for (int dimensions : new int[] {-1, 0, Integer.MAX_VALUE, 2}) {
+            Files.write(directory.resolve("embeddings-A.bin"), entryWithOneFloat(key, dimensions));
+            Assertions.assertTrue(store.load("A", List.of(key)).isEmpty(), dimensions + " dimensions");
+        }
+
+        // The unreadable file is rewritten on the next save.
+        store.save("A", Map.of(key, new float[] {0.5f}));
+        Assertions.assertArrayEquals(new float[] {0.5f}, store.load("A", List.of(key)).get(key));
+    }
+
+    private static byte[] entryWithOneFloat(String key, int dimensions) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0x4B424556);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.write(HexFormat.of().parseHex(key));
+            out.writeInt(dimensions);
+            out.writeFloat(1f);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+package com.nebulasur.demomagic.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Readiness and warm-up failure reporting of {@link KnowledgeBaseService} against a stub
+ * embeddings API.
+ */
+class KnowledgeBaseServiceTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void isReadyFromBootWhenNothingIsPreloaded() throws Exception {
+        KnowledgeBaseService service = start("", embeddingsApi(200, new CountDownLatch(0)));
+        Assertions.assertTrue(service.isWarmupDone());
+        Assertions.assertEquals(true, service.status().get("ready"));
+    }
+
+    @Test
+    void becomesReadyOncePreloadedTenantsPublishTheirVectors() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        KnowledgeBaseService service = start("A", embeddingsApi(200, release));
+        Assertions.assertFalse(service.isWarmupDone());
+        Assertions.assertEquals(KnowledgeBaseService.SearchMode.LEXICAL, service.snapshot("A").mode());
+
+        release.countDown();
+        awaitTrue(service::isWarmupDone);
+        Assertions.assertEquals(KnowledgeBaseService.SearchMode.VECTOR, service.snapshot("A").mode());
+        Assertions.assertEquals(0L, service.status().get("warmupFailures"));
+    }
+
+    @Test
+    void recordsFailedWarmupAndStaysNotReady() throws Exception {
+        KnowledgeBaseService service = start("A", embeddingsApi(500, new CountDownLatch(0)));
+        awaitTrue(() -> (int) service.status().get("pendingWarmups") == 0);
+
+        Map<String, Object> status = service.status();
+        Assertions.assertEquals(false, status.get("ready"));
+        Assertions.assertEquals(1L, status.get("warmupFailures"));
+        Map<?, ?> tenant = (Map<?, ?>) ((Map<?, ?>) status.get("tenants")).get("A");
+        Assertions.assertEquals(1, tenant.get("warmupFailures"));
+        Assertions.assertNotNull(tenant.get("lastWarmupError"));
+        Assertions.assertEquals(KnowledgeBaseService.SearchMode.LEXICAL.name(), tenant.get("mode"));
+    }
+
+    private KnowledgeBaseService start(String preload, String apiBase) throws Exception {
+        OpenAiClient openAi = new OpenAiClient(JSON, "test-key", "gpt-4o-mini", 0, "text-embedding-3-small", 64, apiBase, false);
+        EmbeddingStore store = new EmbeddingStore(directory.resolve("embeddings.bin").toString(), "text-embedding-3-small");
+        TenantRegistry registry = new TenantRegistry("", "A");
+        registry.init();
+        KnowledgeBaseService service = new KnowledgeBaseService(
+            openAi, store, registry, event -> { }, 1, 100, 60, 5000, 16, 100, 64, 20000, 500, 512, preload
+        );
+        service.init();
+        resources.add(service::shutdown);
+        return service;
+    }
+
+    /**
+     * Answers every {@code /embeddings} call with {@code status} once {@code release} opens,
+     * with one small vector per input.
+     */
+    private String embeddingsApi(int status, CountDownLatch release) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> respond(exchange, status, release));
+        server.start();
+        resources.add(() -> server.stop(0));
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    private static void respond(HttpExchange exchange, int status, CountDownLatch release) throws IOException {
+        try (exchange) {
+            JsonNode input = JSON.readTree(exchange.getRequestBody()).path("input");
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            List<Map<String, Object>> data = new ArrayList<>();
+            for (int i = 0; i < input.size(); i++) {
+                int seed = input.get(i).asText().hashCode();
+                data.add(Map.of("index", i, "embedding", List.of(1 + (seed & 7), 1 + (seed >> 3 & 7), 1 + (seed >> 6 & 7))));
+            }
+            byte[] body = JSON.writeValueAsBytes(Map.of("data", data));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.nebulasur.demomagic.session;
+
+import com.nebulasur.demomagic.session.ConversationState.Flow;
+import com.nebulasur.demomagic.session.ConversationState.Slot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class MappedSessionFileTest {
+
+    private static final long TTL = 60_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresConversationStateAfterReopening() throws Exception {
+        Path path = directory.resolve("sessions.dat");
+        ConversationState state = new ConversationState("A", "es");
+        state.setFlow(Flow.CITA_HORA);
+        state.put(Slot.CITA_MOTIVO, " revisión anual ");
+        state.put(Slot.CITA_FECHA, "12/05");
+        try (MappedSessionFile file = new MappedSessionFile(path, TTL)) {
+            file.write("A::s1", state.toBytes());
+        }
+
+        try (MappedSessionFile file = new MappedSessionFile(path, TTL)) {
+            ConversationState restored = ConversationState.fromBytes(file.read("A::s1").orElseThrow()).orElseThrow();
+            Assertions.assertEquals("A", restored.getTenant());
+            Assertions.assertEquals("es", restored.getLang());
+            Assertions.assertEquals(Flow.CITA_HORA, restored.getFlow());
+            Assertions.assertEquals("revisión anual", restored.get(Slot.CITA_MOTIVO));
+            Assertions.assertEquals("12/05", restored.get(Slot.CITA_FECHA));
+            Assertions.assertEquals("", restored.get(Slot.CITA_HORA));
+            Assertions.assertFalse(restored.isDirty());
+        }
+    }
+
+    @Test
+    void keepsLatestWriteAndForgetsDeletedKeysAcrossCompactionAndGrowth() throws Exception {
+        Path path = directory.resolve("sessions.dat");
+        byte[] large = new byte[2048];
+        try (MappedSessionFile file = new MappedSessionFile(path, TTL)) {
+            for (int round = 0; round < 2000; round++) {
+                for (int session = 0; session < 50; session++) {
+                    file.write("A::" + session, payload(session + ":" + round));
+                }
+                if (round < 400) {
+                    file.write("big::" + round, large);
+                }
+            }
+            file.delete("A::7");
+            Assertions.assertTrue((long) file.stats().get("compactions") > 0);
+            Assertions.assertTrue((int) file.stats().get("mappedBytes") > 1 << 20);
+        }
+
+        try (MappedSessionFile file = new MappedSessionFile(path, TTL)) {
+            Assertions.assertEquals("3:1999", text(file.read("A::3").orElseThrow()));
+            Assertions.assertEquals("49:1999", text(file.read("A::49").orElseThrow()));
+            Assertions.assertTrue(file.read("A::7").isEmpty());
+            Assertions.assertEquals(2048, file.read("big::0").orElseThrow().length);
+            Assertions.assertEquals(449, file.stats().get("records"));
+        }
+    }
+
+    @Test
+    void treatsIdleRecordsAsAbsent() throws Exception {
+        try (MappedSessionFile file = new MappedSessionFile(directory.resolve("sessions.dat"), 20L)) {
+            file.write("A::s1", payload("x"));
+            Thread.sleep(40L);
+            Assertions.assertTrue(file.read("A::s1").isEmpty());
+        }
+    }
+
+    @Test
+    void startsEmptyOnForeignFile() throws Exception {
+        Path path = directory.resolve("sessions.dat");
+        Files.writeString(path, "not a session file");
+        try (MappedSessionFile file = new MappedSessionFile(path, TTL)) {
+            Assertions.assertEquals(0, file.stats().get("records"));
+            file.write("A::s1", payload("x"));
+            Assertions.assertEquals("x", text(file.read("A::s1").orElseThrow()));
+        }
+    }
+
+    private static byte[] payload(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
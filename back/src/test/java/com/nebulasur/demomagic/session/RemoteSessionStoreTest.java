@@ -0,0 +1,37 @@
+package com.nebulasur.demomagic.session;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+class RemoteSessionStoreTest {
+
+    @Test
+    void rejectsSaveAgainstStaleVersion() throws Exception {
+        try (SessionStoreServer server = new SessionStoreServer()) {
+            RemoteSessionStore first = new RemoteSessionStore(server.url(), Duration.ofSeconds(2), 60_000L);
+            RemoteSessionStore second = new RemoteSessionStore(server.url(), Duration.ofSeconds(2), 60_000L);
+
+            Assertions.assertTrue(first.load("A::s 1").isEmpty());
+            Assertions.assertTrue(first.save("A::s 1", bytes("v1"), 0L));
+            Assertions.assertFalse(second.save("A::s 1", bytes("other"), 0L));
+
+            SessionStore.Versioned seenByFirst = first.load("A::s 1").orElseThrow();
+            SessionStore.Versioned seenBySecond = second.load("A::s 1").orElseThrow();
+            Assertions.assertEquals(1L, seenBySecond.version());
+            Assertions.assertTrue(second.save("A::s 1", bytes("v2"), seenBySecond.version()));
+            Assertions.assertFalse(first.save("A::s 1", bytes("lost"), seenByFirst.version()));
+
+            SessionStore.Versioned latest = first.load("A::s 1").orElseThrow();
+            Assertions.assertEquals("v2", new String(latest.record(), StandardCharsets.UTF_8));
+            Assertions.assertEquals(2L, latest.version());
+            Assertions.assertEquals(1L, first.stats().get("conflicts"));
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
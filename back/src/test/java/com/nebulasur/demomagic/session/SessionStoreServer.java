@@ -0,0 +1,106 @@
+package com.nebulasur.demomagic.session;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for the external session service spoken to by {@link RemoteSessionStore},
+ * bound to a free port on localhost.
+ */
+public final class SessionStoreServer implements AutoCloseable {
+
+    private static final String CONTEXT = "/sessions";
+
+    private final HttpServer server;
+    private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+    private volatile boolean rejectSaves;
+
+    public SessionStoreServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    public boolean contains(String key) {
+        return sessions.containsKey(key);
+    }
+
+    /**
+     * Makes every save fail with a version conflict, as if another writer always got there first.
+     */
+    public void rejectSaves(boolean reject) {
+        rejectSaves = reject;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getRawPath();
+            String key = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> get(exchange, key);
+                case "PUT" -> put(exchange, key);
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        Entry entry = sessions.get(key);
+        if (entry == null || entry.expiresAtMillis < System.currentTimeMillis()) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", "\"" + entry.version + "\"");
+        exchange.sendResponseHeaders(200, entry.record.length);
+        exchange.getResponseBody().write(entry.record);
+    }
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        byte[] record = exchange.getRequestBody().readAllBytes();
+        if (rejectSaves) {
+            exchange.sendResponseHeaders(412, -1);
+            return;
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        boolean create = "*".equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+        String ttl = exchange.getRequestHeaders().getFirst("Session-Ttl-Seconds");
+        long expiresAt = System.currentTimeMillis() + 1000L * (ttl == null ? 3600L : Long.parseLong(ttl));
+        long now = System.currentTimeMillis();
+        boolean[] stored = new boolean[1];
+        Entry result = sessions.compute(key, (k, current) -> {
+            Entry live = current == null || current.expiresAtMillis < now ? null : current;
+            boolean matches = create ? live == null : live != null && ifMatch != null && ifMatch.equals("\"" + live.version + "\"");
+            if (!matches) {
+                return current;
+            }
+            stored[0] = true;
+            return new Entry(record, live == null ? 1L : live.version + 1L, expiresAt);
+        });
+        if (!stored[0]) {
+            exchange.sendResponseHeaders(412, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", "\"" + result.version + "\"");
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private record Entry(byte[] record, long version, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.nebulasur.demomagic.text;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * {@link TextNormalizer} must return exactly what the regex pipeline it replaced returned.
+ */
+class TextNormalizerTest {
+
+    @Test
+    void matchesRegexPipelineForEveryCharacter() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String alone = String.valueOf((char) c);
+            String between = "Ab" + (char) c + "c D";
+            Assertions.assertEquals(legacy(alone), TextNormalizer.normalize(alone), "U+" + Integer.toHexString(c));
+            Assertions.assertEquals(legacy(between), TextNormalizer.normalize(between), "U+" + Integer.toHexString(c));
+        }
+    }
+
+    @Test
+    void matchesRegexPipelineForRandomText() {
+        String alphabet = "aAzZ09 \t\n\r.,;:!?¿¡-_/@#áéíóúÁÉÍÓÚñÑüÜçÇß́̈  ǅİıΣσς한글ﬁ€";
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(50) == 0) {
+                    text.appendCodePoint(0x1D400 + random.nextInt(0x400));
+                } else {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            String value = text.toString();
+            Assertions.assertEquals(legacy(value), TextNormalizer.normalize(value), value);
+        }
+    }
+
+    @Test
+    void matchesRegexPipelineForKnowledgeBasesAndReplayQuestions() throws Exception {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (String pattern : new String[] {"classpath*:kb/kb*.txt", "classpath*:chatbot/*.txt"}) {
+            for (Resource resource : resolver.getResources(pattern)) {
+                String content = new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                Assertions.assertEquals(legacy(content), TextNormalizer.normalize(content), resource.getFilename());
+                for (String line : content.split("\n")) {
+                    Assertions.assertEquals(legacy(line), TextNormalizer.normalize(line), line);
+                }
+            }
+        }
+    }
+
+    @Test
+    void returnsInputWhenAlreadyNormalized() {
+        String normalized = "hola que tal 2024";
+        Assertions.assertSame(normalized, TextNormalizer.normalize(normalized));
+        Assertions.assertEquals("", TextNormalizer.normalize(null));
+    }
+
+    private static String legacy(String text) {
+        String ascii = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return ascii.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+}
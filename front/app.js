@@ -138,11 +138,12 @@ function renderServiceCards() {
 async function sendMessage(message) {
   appendMessage("user", message);
   refs.typingStatus.classList.remove("hidden");
+  let botNode = null;
 
   try {
-    const response = await fetch(`${window.APP_CONFIG.API_BASE_URL}/api/chat`, {
+    const response = await fetch(`${window.APP_CONFIG.API_BASE_URL}/api/chat/stream`, {
       method: "POST",
-      headers: { "Content-Type": "application/json" },
+      headers: { "Content-Type": "application/json", Accept: "text/event-stream" },
       body: JSON.stringify({
         kb: state.kb,
         message,
@@ -155,12 +156,31 @@ async function sendMessage(message) {
       throw new Error(`HTTP ${response.status}`);
     }
 
-    const data = await response.json();
+    let data = null;
+    await readEvents(response, (event, payload) => {
+      if (event === "token" || event === "reply") {
+        refs.typingStatus.classList.add("hidden");
+        botNode = botNode || appendMessage("bot", "");
+        botNode.textContent += event === "token" ? payload.text : payload.reply;
+        refs.chatMessages.scrollTop = refs.chatMessages.scrollHeight;
+      } else if (event === "done") {
+        data = payload;
+      }
+    });
+
+    if (!data) {
+      throw new Error("stream closed");
+    }
     if (Array.isArray(data.actions) && data.actions.length > 0) {
       applyActions(data.actions, data.item);
     }
 
-    appendMessage("bot", data.reply || state.i18n.fallbackReply);
+    const reply = data.reply || state.i18n.fallbackReply;
+    if (botNode) {
+      botNode.textContent = reply;
+    } else {
+      appendMessage("bot", reply);
+    }
   } catch (error) {
     appendMessage("bot", `${state.i18n.serverError} (${error.message})`);
   } finally {
@@ -168,6 +188,37 @@ async function sendMessage(message) {
   }
 }
 
+async function readEvents(response, onEvent) {
+  const reader = response.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = "";
+  for (;;) {
+    const { value, done } = await reader.read();
+    if (done) {
+      return;
+    }
+    buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, "\n");
+    let boundary = buffer.indexOf("\n\n");
+    while (boundary >= 0) {
+      const block = buffer.slice(0, boundary);
+      buffer = buffer.slice(boundary + 2);
+      let event = "message";
+      const data = [];
+      block.split("\n").forEach((line) => {
+        if (line.startsWith("event:")) {
+          event = line.slice(6).trim();
+        } else if (line.startsWith("data:")) {
+          data.push(line.slice(5));
+        }
+      });
+      if (data.length > 0) {
+        onEvent(event, JSON.parse(data.join("\n")));
+      }
+      boundary = buffer.indexOf("\n\n");
+    }
+  }
+}
+
 function applyActions(actions, item) {
   actions.forEach((action) => {
     const type = (action.type || "").toUpperCase();
@@ -310,6 +361,7 @@ function appendMessage(role, text) {
   node.textContent = text;
   refs.chatMessages.appendChild(node);
   refs.chatMessages.scrollTop = refs.chatMessages.scrollHeight;
+  return node;
 }
 
 function isMobile() {